@@ -0,0 +1,189 @@
+package util.reflect.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generate a util.reflect.ClassAccessor for every class annotated with util.reflect.GenerateAccessor, and register them as services so that ClassUtil.analyze picks them up.
+ */
+public class AccessorProcessor extends AbstractProcessor {
+
+	private static final String ANNOTATION = "util.reflect.GenerateAccessor";
+	private static final String ACCESSOR = "util.reflect.ClassAccessor";
+
+	private final Set<String> generated = new LinkedHashSet<>();
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Set.of(ANNOTATION);
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.CLASS) {
+					error(element, "@GenerateAccessor is only applicable to classes");
+					continue;
+				}
+				TypeElement type = (TypeElement) element;
+				if (isValid(type)) {
+					generate(type);
+				}
+			}
+		}
+		if (roundEnv.processingOver() && !generated.isEmpty()) {
+			writeServiceFile();
+		}
+		return true;
+	}
+
+	private boolean isValid(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(type, "@GenerateAccessor class must not be abstract");
+			return false;
+		}
+		for (Element current = type; current instanceof TypeElement; current = current.getEnclosingElement()) {
+			TypeElement currentType = (TypeElement) current;
+			if (currentType.getModifiers().contains(Modifier.PRIVATE)) {
+				error(type, "@GenerateAccessor class and its enclosing classes must not be private");
+				return false;
+			}
+			if (currentType.getNestingKind() == NestingKind.MEMBER && !currentType.getModifiers().contains(Modifier.STATIC)) {
+				error(type, "@GenerateAccessor class must be a top-level or static nested class");
+				return false;
+			}
+			if (currentType.getNestingKind() == NestingKind.LOCAL || currentType.getNestingKind() == NestingKind.ANONYMOUS) {
+				error(type, "@GenerateAccessor class must be a top-level or static nested class");
+				return false;
+			}
+		}
+		boolean hasNoArgConstructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+				.anyMatch(constructor -> constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE));
+		if (!hasNoArgConstructor) {
+			error(type, "@GenerateAccessor class must have a non-private no-arg constructor");
+			return false;
+		}
+		return true;
+	}
+
+	private void generate(TypeElement type) {
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + "$Accessor";
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		String typeName = type.getQualifiedName().toString();
+
+		List<VariableElement> fields = new ArrayList<>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			Set<Modifier> modifiers = field.getModifiers();
+			if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+				continue;
+			}
+			fields.add(field);
+		}
+
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("@javax.annotation.processing.Generated(\"").append(AccessorProcessor.class.getName()).append("\")\n");
+		source.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+		source.append("public final class ").append(simpleName).append(" implements ").append(ACCESSOR).append("<").append(typeName).append("> {\n\n");
+
+		source.append("\tprivate static final String[] FIELD_NAMES = {");
+		for (int i = 0; i < fields.size(); i++) {
+			source.append(i == 0 ? " " : ", ").append('"').append(fields.get(i).getSimpleName()).append('"');
+		}
+		source.append(fields.isEmpty() ? "};\n\n" : " };\n\n");
+
+		source.append("\tpublic Class<").append(typeName).append("> getAccessedClass() {\n");
+		source.append("\t\treturn ").append(typeName).append(".class;\n");
+		source.append("\t}\n\n");
+
+		source.append("\tpublic ").append(typeName).append(" newInstance() {\n");
+		source.append("\t\treturn new ").append(typeName).append("();\n");
+		source.append("\t}\n\n");
+
+		source.append("\tpublic String[] getFieldNames() {\n");
+		source.append("\t\treturn FIELD_NAMES.clone();\n");
+		source.append("\t}\n\n");
+
+		source.append("\tpublic Object get(").append(typeName).append(" instance, int index) {\n");
+		source.append("\t\tswitch (index) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			source.append("\t\tcase ").append(i).append(": return instance.").append(fields.get(i).getSimpleName()).append(";\n");
+		}
+		source.append("\t\tdefault: throw new IndexOutOfBoundsException(index);\n");
+		source.append("\t\t}\n");
+		source.append("\t}\n\n");
+
+		source.append("\tpublic void set(").append(typeName).append(" instance, int index, Object value) {\n");
+		source.append("\t\tswitch (index) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			VariableElement field = fields.get(i);
+			source.append("\t\tcase ").append(i).append(": instance.").append(field.getSimpleName()).append(" = ").append(cast(field.asType())).append("value; return;\n");
+		}
+		source.append("\t\tdefault: throw new IndexOutOfBoundsException(index);\n");
+		source.append("\t\t}\n");
+		source.append("\t}\n");
+		source.append("}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+			writer.write(source.toString());
+			generated.add(qualifiedName);
+		} catch (IOException e) {
+			error(type, "Unable to write accessor " + qualifiedName + ": " + e.getMessage());
+		}
+	}
+
+	private String cast(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			TypeElement boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) type);
+			return "(" + type + ") (" + boxed.getQualifiedName() + ") ";
+		}
+		return "(" + processingEnv.getTypeUtils().erasure(type) + ") ";
+	}
+
+	private void writeServiceFile() {
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + ACCESSOR);
+			try (Writer writer = file.openWriter()) {
+				for (String name : generated) {
+					writer.write(name + "\n");
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write service file for " + ACCESSOR + ": " + e.getMessage());
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,428 @@
+package util.reflect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Persist the analysis results of the interned ClassContexts (resolved field types, chosen constructors, superclasses, interfaces and inferred implementations) to a local file,
+ * so that another JVM can restore them instead of analyzing the same classes again through reflection.
+ * Every class referenced by the file is validated against the size and modification time of its class file, or of the jar file it was loaded from, or the runtime version for JDK classes,
+ * so that validating does not read the class files. Entries referencing a changed or missing class are ignored.
+ * Restoring an entry still loads its classes and looks up its fields and constructor through reflection, so it is not necessarily cheaper than analyzing:
+ * in a new class loader, loading a cache of a dozen test classes took longer than analyzing them on demand. Measure on the actual classes before enabling it.
+ *
+ * Setting the system property {@value #PROPERTY} to a file path loads the file when ClassUtil is initialized.
+ * Saving it back when the JVM shuts down is opt-in, by also setting the system property {@value #SAVE_ON_EXIT_PROPERTY} to true.
+ */
+@SuppressWarnings("unchecked")
+public class AnalysisCache {
+
+	public static final String PROPERTY = "util.reflect.analysisCache";
+	public static final String SAVE_ON_EXIT_PROPERTY = "util.reflect.analysisCache.saveOnExit";
+
+	private static final int MAGIC = 0x52524943;
+	private static final int VERSION = 1;
+
+	private static final byte NULL = 0, CLASS = 1, PARAMETERIZED = 2, ARRAY = 3, VARIABLE = 4, WILDCARD = 5;
+	private static final byte UNKNOWN = 0, ABSENT = 1, PRESENT = 2;
+
+	private static final String UNKNOWN_IDENTITY = "unknown";
+
+	private static final Map<String, Class<?>> PRIMITIVES = Stream.concat(ClassUtil.PRIMITIVE_DEFAULTS.keySet().stream(), Stream.of(void.class))
+			.collect(LinkedHashMap::new, (map, clazz) -> map.put(clazz.getName(), clazz), Map::putAll);
+
+	private static class StaleEntryException extends Exception {
+		private static final long serialVersionUID = 4530183465914226357L;
+	}
+
+	/**
+	 * Write the analysis results of all interned ClassContexts, and the ClassContexts reachable from them, to the given file.
+	 * The file is replaced atomically, so concurrent JVMs sharing the same file will not read a partially written file.
+	 */
+	public static void save(Path file) throws IOException {
+		Map<Class<?>, Integer> classes = new LinkedHashMap<>();
+		Map<Path, String> jarIdentities = new HashMap<>();
+		List<byte[]> entries = new ArrayList<>();
+		for (ClassContext<?> context : reachableClassContexts()) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try {
+				writeEntry(new DataOutputStream(bytes), context, classes);
+				entries.add(bytes.toByteArray());
+			} catch (IllegalArgumentException e) {
+				// types which cannot be reconstructed (e.g. method type variables) are not cached
+			}
+		}
+
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(classes.size());
+				for (Class<?> clazz : classes.keySet()) {
+					out.writeUTF(clazz.getName());
+					out.writeUTF(identityOf(clazz, jarIdentities));
+				}
+				out.writeInt(entries.size());
+				for (byte[] entry : entries) {
+					out.writeInt(entry.length);
+					out.write(entry);
+				}
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Restore the analysis results in the given file into the interned ClassContexts. Analysis results already computed in this JVM are kept.
+	 * Return the number of restored entries. A missing file or a file of another format restores nothing.
+	 */
+	public static int load(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return 0;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return 0;
+			}
+			// stale classes are kept as null
+			Map<Path, String> jarIdentities = new HashMap<>();
+			Class<?>[] classes = new Class<?>[in.readInt()];
+			for (int i = 0; i < classes.length; i++) {
+				String name = in.readUTF();
+				String identity = in.readUTF();
+				try {
+					Class<?> clazz = loadClass(name);
+					classes[i] = !identity.equals(UNKNOWN_IDENTITY) && identity.equals(identityOf(clazz, jarIdentities)) ? clazz : null;
+				} catch (ClassNotFoundException | LinkageError e) {
+					classes[i] = null;
+				}
+			}
+
+			int restored = 0;
+			int entryCount = in.readInt();
+			for (int i = 0; i < entryCount; i++) {
+				byte[] entry = new byte[in.readInt()];
+				in.readFully(entry);
+				try {
+					readEntry(new DataInputStream(new ByteArrayInputStream(entry)), classes);
+					restored++;
+				} catch (StaleEntryException | ReflectiveOperationException | RuntimeException e) {
+					// ignore the entry, it will be analyzed through reflection on demand
+				}
+			}
+			return restored;
+		}
+	}
+
+	private static List<ClassContext<?>> reachableClassContexts() {
+		Set<ClassContext<?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<ClassContext<?>> queue = new ArrayDeque<>(ClassContext.getInternedClassContexts());
+		List<ClassContext<?>> result = new ArrayList<>();
+		while (!queue.isEmpty()) {
+			ClassContext<?> context = queue.poll();
+			if (!visited.add(context)) {
+				continue;
+			}
+			result.add(context);
+			Optional<ClassContext<?>> superclass = context.getComputedSuperclass();
+			if (superclass != null) {
+				superclass.ifPresent(queue::add);
+			}
+			if (context.getComputedInterfaces() != null) {
+				queue.addAll(context.getComputedInterfaces().values());
+			}
+			if (context.getComputedFieldTypes() != null) {
+				for (ContextualType<?> fieldType : context.getComputedFieldTypes().values()) {
+					while (fieldType instanceof ArrayContext<?> arrayContext) {
+						fieldType = arrayContext.getComponentType();
+					}
+					queue.add((ClassContext<?>) fieldType);
+				}
+			}
+			queue.addAll(context.getInferredImplementations().values());
+		}
+		return result;
+	}
+
+	private static void writeEntry(DataOutputStream out, ClassContext<?> context, Map<Class<?>, Integer> classes) throws IOException {
+		writeType(out, context.getOriginalType(), classes);
+
+		Optional<? extends Constructor<?>> constructor = context.getComputedConstructor();
+		if (constructor == null) {
+			out.writeByte(UNKNOWN);
+		} else if (constructor.isEmpty()) {
+			out.writeByte(ABSENT);
+		} else {
+			out.writeByte(PRESENT);
+			Class<?>[] parameterTypes = constructor.get().getParameterTypes();
+			out.writeInt(parameterTypes.length);
+			for (Class<?> parameterType : parameterTypes) {
+				writeClass(out, parameterType, classes);
+			}
+		}
+
+		Optional<ClassContext<?>> superclass = context.getComputedSuperclass();
+		if (superclass == null) {
+			out.writeByte(UNKNOWN);
+		} else if (superclass.isEmpty()) {
+			out.writeByte(ABSENT);
+		} else {
+			out.writeByte(PRESENT);
+			writeType(out, superclass.get().getOriginalType(), classes);
+		}
+
+		Map<Class<?>, ClassContext<?>> interfaces = context.getComputedInterfaces();
+		if (interfaces == null) {
+			out.writeByte(UNKNOWN);
+		} else {
+			out.writeByte(PRESENT);
+			out.writeInt(interfaces.size());
+			for (ClassContext<?> interfaceContext : interfaces.values()) {
+				writeType(out, interfaceContext.getOriginalType(), classes);
+			}
+		}
+
+		Map<Field, ContextualType<?>> fieldTypes = context.getComputedFieldTypes();
+		if (fieldTypes == null) {
+			out.writeByte(UNKNOWN);
+		} else {
+			out.writeByte(PRESENT);
+			out.writeInt(fieldTypes.size());
+			for (Map.Entry<Field, ContextualType<?>> entry : fieldTypes.entrySet()) {
+				writeClass(out, entry.getKey().getDeclaringClass(), classes);
+				out.writeUTF(entry.getKey().getName());
+				ContextualType<?> fieldType = entry.getValue();
+				writeType(out, fieldType instanceof ClassContext<?> classContext ? classContext.getOriginalType() : fieldType.getResolvedType(), classes);
+			}
+		}
+
+		Map<Class<?>, ClassContext<?>> inferredImplementations = context.getInferredImplementations();
+		out.writeInt(inferredImplementations.size());
+		for (Map.Entry<Class<?>, ClassContext<?>> entry : inferredImplementations.entrySet()) {
+			writeClass(out, entry.getKey(), classes);
+			writeType(out, entry.getValue().getOriginalType(), classes);
+		}
+	}
+
+	private static void readEntry(DataInputStream in, Class<?>[] classes) throws IOException, StaleEntryException, ReflectiveOperationException {
+		ClassContext<Object> context = ClassContext.ofType(readType(in, classes)).intern();
+
+		byte constructorState = in.readByte();
+		if (constructorState != UNKNOWN) {
+			Constructor<Object> constructor = null;
+			if (constructorState == PRESENT) {
+				Class<?>[] parameterTypes = new Class<?>[in.readInt()];
+				for (int i = 0; i < parameterTypes.length; i++) {
+					parameterTypes[i] = readClass(in, classes);
+				}
+				constructor = context.getActualClass().getDeclaredConstructor(parameterTypes);
+			}
+			context.restoreConstructor(constructor);
+		}
+
+		byte superclassState = in.readByte();
+		if (superclassState != UNKNOWN) {
+			context.restoreSuperclass(superclassState == PRESENT ? ClassContext.ofType(readType(in, classes)).intern() : null);
+		}
+
+		if (in.readByte() == PRESENT) {
+			List<ClassContext<?>> interfaces = new ArrayList<>();
+			for (int i = in.readInt(); i > 0; i--) {
+				interfaces.add(ClassContext.ofType(readType(in, classes)).intern());
+			}
+			context.restoreInterfaces(interfaces);
+		}
+
+		if (in.readByte() == PRESENT) {
+			Map<Field, ContextualType<?>> fieldTypes = new LinkedHashMap<>();
+			for (int i = in.readInt(); i > 0; i--) {
+				Field field = readClass(in, classes).getDeclaredField(in.readUTF());
+				field.trySetAccessible();
+				ContextualType<?> fieldType = ClassUtil.analyze(readType(in, classes));
+				fieldTypes.put(field, fieldType instanceof ClassContext<?> classContext ? classContext.intern() : fieldType);
+			}
+			context.restoreFieldTypes(Collections.unmodifiableMap(fieldTypes));
+		}
+
+		for (int i = in.readInt(); i > 0; i--) {
+			Class<?> implementationClass = readClass(in, classes);
+			context.restoreInferredImplementation(implementationClass, ClassContext.ofType(readType(in, classes)).intern());
+		}
+	}
+
+	private static void writeClass(DataOutputStream out, Class<?> clazz, Map<Class<?>, Integer> classes) throws IOException {
+		if (clazz.isHidden()) {
+			throw new IllegalArgumentException("Hidden class " + clazz + " cannot be cached");
+		}
+		out.writeInt(classes.computeIfAbsent(clazz, c -> classes.size()));
+	}
+
+	private static Class<?> readClass(DataInputStream in, Class<?>[] classes) throws IOException, StaleEntryException {
+		Class<?> clazz = classes[in.readInt()];
+		if (clazz == null) {
+			throw new StaleEntryException();
+		}
+		return clazz;
+	}
+
+	private static void writeTypes(DataOutputStream out, Type[] types, Map<Class<?>, Integer> classes) throws IOException {
+		out.writeInt(types.length);
+		for (Type type : types) {
+			writeType(out, type, classes);
+		}
+	}
+
+	private static Type[] readTypes(DataInputStream in, Class<?>[] classes) throws IOException, StaleEntryException {
+		Type[] types = new Type[in.readInt()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = readType(in, classes);
+		}
+		return types;
+	}
+
+	private static void writeType(DataOutputStream out, Type type, Map<Class<?>, Integer> classes) throws IOException {
+		if (type == null) {
+			out.writeByte(NULL);
+		} else if (type instanceof Class<?> clazz) {
+			out.writeByte(CLASS);
+			writeClass(out, clazz, classes);
+		} else if (type instanceof ParameterizedType theType) {
+			out.writeByte(PARAMETERIZED);
+			writeType(out, theType.getRawType(), classes);
+			writeType(out, theType.getOwnerType(), classes);
+			writeTypes(out, theType.getActualTypeArguments(), classes);
+		} else if (type instanceof GenericArrayType theType) {
+			out.writeByte(ARRAY);
+			writeType(out, theType.getGenericComponentType(), classes);
+		} else if (type instanceof TypeVariable<?> theType) {
+			if (!(theType.getGenericDeclaration() instanceof Class<?> declaringClass)) {
+				throw new IllegalArgumentException("Type variable " + theType + " is not declared by a class");
+			}
+			out.writeByte(VARIABLE);
+			writeClass(out, declaringClass, classes);
+			out.writeUTF(theType.getName());
+		} else if (type instanceof WildcardType theType) {
+			out.writeByte(WILDCARD);
+			writeTypes(out, theType.getUpperBounds(), classes);
+			writeTypes(out, theType.getLowerBounds(), classes);
+		} else {
+			throw new IllegalArgumentException("Unrecognized type " + type);
+		}
+	}
+
+	private static Type readType(DataInputStream in, Class<?>[] classes) throws IOException, StaleEntryException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case CLASS:
+			return readClass(in, classes);
+		case PARAMETERIZED:
+			Type raw = readType(in, classes);
+			Type owner = readType(in, classes);
+			return TypeResolver.newParameterizedType(raw, owner, readTypes(in, classes));
+		case ARRAY:
+			return TypeResolver.newResolvedArrayType(readType(in, classes));
+		case VARIABLE:
+			Class<?> declaringClass = readClass(in, classes);
+			String name = in.readUTF();
+			for (TypeVariable<?> typeVariable : declaringClass.getTypeParameters()) {
+				if (typeVariable.getName().equals(name)) {
+					return typeVariable;
+				}
+			}
+			throw new StaleEntryException();
+		case WILDCARD:
+			Type[] upper = readTypes(in, classes);
+			return TypeResolver.newWildcardType(upper, readTypes(in, classes));
+		default:
+			throw new IOException("Unrecognized type tag " + tag);
+		}
+	}
+
+	private static Class<?> loadClass(String name) throws ClassNotFoundException {
+		Class<?> primitive = PRIMITIVES.get(name);
+		if (primitive != null) {
+			return primitive;
+		}
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		return Class.forName(name, false, loader != null ? loader : AnalysisCache.class.getClassLoader());
+	}
+
+	/**
+	 * A string identifying the current definition of the given class: the size and modification time of its class file, or of the jar file it was loaded from
+	 * (computed once per jar file in the given map), or the runtime version for JDK classes. Classes of other code sources are unknown, and never valid.
+	 */
+	private static String identityOf(Class<?> clazz, Map<Path, String> jarIdentities) throws IOException {
+		while (clazz.isArray()) {
+			clazz = clazz.getComponentType();
+		}
+		if (clazz.isPrimitive()) {
+			return "primitive";
+		}
+		ClassLoader loader = clazz.getClassLoader();
+		if (loader == null || loader == ClassLoader.getPlatformClassLoader()) {
+			return "jdk " + Runtime.version();
+		}
+		Path location;
+		try {
+			CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+			if (codeSource == null || codeSource.getLocation() == null || !codeSource.getLocation().getProtocol().equals("file")) {
+				return UNKNOWN_IDENTITY;
+			}
+			location = Path.of(codeSource.getLocation().toURI());
+		} catch (URISyntaxException | IllegalArgumentException | SecurityException e) {
+			return UNKNOWN_IDENTITY;
+		}
+		if (Files.isDirectory(location)) {
+			Path classFile = location.resolve(clazz.getName().replace('.', '/') + ".class");
+			return Files.isRegularFile(classFile) ? "file " + fileIdentity(classFile) : UNKNOWN_IDENTITY;
+		}
+		String jarIdentity = jarIdentities.get(location);
+		if (jarIdentity == null) {
+			jarIdentity = Files.isRegularFile(location) ? "jar " + fileIdentity(location) : UNKNOWN_IDENTITY;
+			jarIdentities.put(location, jarIdentity);
+		}
+		return jarIdentity;
+	}
+
+	private static String fileIdentity(Path file) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		return attributes.size() + " " + attributes.lastModifiedTime().toMillis();
+	}
+}
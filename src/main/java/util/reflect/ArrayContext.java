@@ -3,37 +3,47 @@ package util.reflect;
 import java.lang.reflect.Array;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import lombok.AccessLevel;
-import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import util.reflect.ValueGenerator.CurrentInstanceContext;
 
 /**
  * An ArrayContext represents an array class with its generic component type resolved.
  */
 @SuppressWarnings("unchecked")
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
-@EqualsAndHashCode(of = {"actualClass", "componentType"}, callSuper = false)
 public class ArrayContext<T> extends ContextualType<T> {
 
 	private static final Map<Type, ArrayContext<?>> CACHE = new ConcurrentHashMap<>();
+	// The interned ArrayContexts by structural equality, so that there is only one interned ArrayContext for equal ones
+	private static final Map<ArrayContext<?>, ArrayContext<?>> CANONICAL = new ConcurrentHashMap<>();
 
 	private final Type originalType;
 
-	private Type resolvedType;
+	private volatile Type resolvedType;
 
 	@Getter
 	private final Class<T> actualClass;
 	@Getter
 	private final ContextualType<?> componentType;
 
+	// The structural hash code of actualClass and componentType, computed once
+	private final int hash;
+	private volatile boolean interned;
+
+	private ArrayContext(Type originalType, Class<T> actualClass, ContextualType<?> componentType) {
+		this.originalType = originalType;
+		this.actualClass = actualClass;
+		this.componentType = componentType;
+		this.hash = 31 * actualClass.hashCode() + componentType.hashCode();
+	}
+
 	static <R> ArrayContext<R> ofClass(Class<R> clazz) {
 		ArrayContext<R> cached = (ArrayContext<R>) CACHE.get(clazz);
+		Metrics.INSTANCE.recordArrayContextLookup(cached != null);
 		if (cached != null) {
 			return cached;
 		}
@@ -42,6 +52,7 @@ public class ArrayContext<T> extends ContextualType<T> {
 
 	static <R> ArrayContext<R> ofGenericArrayType(GenericArrayType type) {
 		ArrayContext<R> cached = (ArrayContext<R>) CACHE.get(type);
+		Metrics.INSTANCE.recordArrayContextLookup(cached != null);
 		if (cached != null) {
 			return cached;
 		}
@@ -60,7 +71,21 @@ public class ArrayContext<T> extends ContextualType<T> {
 	}
 
 	public ArrayContext<T> intern() {
-		return (ArrayContext<T>) CACHE.computeIfAbsent(originalType, t -> this);
+		ArrayContext<T> cached = (ArrayContext<T>) CACHE.get(originalType);
+		if (cached != null) {
+			return cached;
+		}
+		ArrayContext<T> canonical = (ArrayContext<T>) CANONICAL.computeIfAbsent(this, c -> this);
+		canonical.interned = true;
+		return (ArrayContext<T>) CACHE.computeIfAbsent(originalType, t -> canonical);
+	}
+
+	boolean isInterned() {
+		return CACHE.get(originalType) == this;
+	}
+
+	static Collection<ArrayContext<?>> getInternedArrayContexts() {
+		return CACHE.values();
 	}
 
 	/**
@@ -70,16 +95,67 @@ public class ArrayContext<T> extends ContextualType<T> {
 		return (T) Array.newInstance(actualClass.getComponentType(), length);
 	}
 
+	/**
+	 * The approximate shallow size in bytes of an array instance of the given length, see {@link ClassUtil#OBJECT_HEADER_SIZE}.
+	 */
+	long getShallowSize(int length) {
+		return ClassUtil.alignObjectSize(ClassUtil.ARRAY_HEADER_SIZE + (long) length * ClassUtil.getSlotSize(actualClass.getComponentType()));
+	}
+
 	protected T randomInstance(ValueGenerator generator, RandomInstanceState state) throws ReflectiveOperationException {
+		Object reuse = state.takeReuse();
+		state.countNode();
+		int length = state.budgetCollectionSize(generator.getCollectionSize(this, state.joinPath()));
+		boolean reused = reuse != null && reuse.getClass() == actualClass && Array.getLength(reuse) == length;
+		T instance = reused ? (T) reuse : newInstance(length);
+		if (!reused) {
+			state.addBytes(getShallowSize(length));
+		}
+		boolean reuseItems = reused && !actualClass.getComponentType().isPrimitive();
+		for (int i = 0; i < length; i++) {
+			state.pushIndexPath(i);
+			Array.set(instance, i, randomItem(generator, state, reuseItems ? Array.get(instance, i) : null));
+			state.popPath();
+		}
+		return instance;
+	}
+
+	/**
+	 * Generate an item at the current path of the state, randomizing the given existing item in place if possible.
+	 */
+	Object randomItem(ValueGenerator generator, RandomInstanceState state, Object reuse) throws ReflectiveOperationException {
+		CurrentInstanceContext instanceCreator = () -> {
+			return generator.generate(
+					componentType,
+					state.joinPath(),
+					() -> {
+						state.setReuse(reuse);
+						return componentType.randomInstance(generator, state);
+					});
+		};
+		// an item generated directly by the ValueGenerator (or cut off) is counted as a node, as a field value is by randomInstance
+		long nodeCount = state.getNodeCount();
+		List<Object> recursed = state.getInstances(componentType);
+		Object item = recursed.size() > 0 ? generator.onRecursion(componentType, state.joinPath(), recursed, instanceCreator) : instanceCreator.randomInstance();
+		if (state.getNodeCount() == nodeCount) {
+			state.countNode();
+		}
+		return item;
+	}
+
+	void generate(ValueGenerator generator, GenerationVisitor visitor, RandomInstanceState state) throws ReflectiveOperationException {
 		int length = generator.getCollectionSize(this, state.joinPath());
-		T instance = newInstance(length);
+		visitor.beginCollection(this, state.joinPath(), length);
 		for (int i = 0; i < length; i++) {
 			state.pushIndexPath(i);
 			CurrentInstanceContext instanceCreator = () -> {
 				return generator.generate(
 						componentType,
 						state.joinPath(),
-						() -> componentType.randomInstance(generator, state));
+						() -> {
+							componentType.generate(generator, visitor, state);
+							return GENERATED;
+						});
 			};
 			List<Object> recursed = state.getInstances(componentType);
 			Object item;
@@ -88,10 +164,31 @@ public class ArrayContext<T> extends ContextualType<T> {
 			} else {
 				item = instanceCreator.randomInstance();
 			}
-			Array.set(instance, i, item);
+			if (item != GENERATED) {
+				visitor.value(componentType, state.joinPath(), item);
+			}
 			state.popPath();
 		}
-		return instance;
+		visitor.endCollection();
+	}
+
+	/**
+	 * ArrayContexts are equal if their actual classes and component types are. Interned ArrayContexts are unique, so two of them are only equal if they are the same instance.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ArrayContext<?> other) || hash != other.hash || interned && other.interned) {
+			return false;
+		}
+		return actualClass == other.actualClass && componentType.equals(other.componentType);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
 	}
 
 	@Override
@@ -0,0 +1,26 @@
+package util.reflect;
+
+/**
+ * An accessor of a class, usually generated at compile time for classes annotated with {@link GenerateAccessor}.
+ * Implementations are discovered through {@link java.util.ServiceLoader} and used by ClassContext in place of constructor probing and Field.get/Field.set for the covered fields.
+ * It does not replace the analysis: fields are still discovered, and their generic types resolved, through reflection,
+ * since the ValueGenerator and CloneOptions hooks and the field maps of ClassContext are keyed by java.lang.reflect.Field. Accessors therefore do not reduce the cost of ClassUtil.analyze.
+ */
+public interface ClassAccessor<T> {
+
+	Class<T> getAccessedClass();
+
+	/**
+	 * Create a new instance with the no-arg constructor.
+	 */
+	T newInstance();
+
+	/**
+	 * Names of the instance fields declared in the accessed class that are covered by this accessor. Field indices of {@link #get(Object, int)} and {@link #set(Object, int, Object)} follow this order.
+	 */
+	String[] getFieldNames();
+
+	Object get(T instance, int index);
+
+	void set(T instance, int index, Object value);
+}
@@ -1,6 +1,7 @@
 package util.reflect;
 
 import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InaccessibleObjectException;
@@ -8,35 +9,47 @@ import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
-import lombok.AccessLevel;
-import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import util.reflect.JfrEvents.ComputeConstructorEvent;
+import util.reflect.JfrEvents.ComputeFieldsEvent;
 import util.reflect.ValueGenerator.CurrentInstanceContext;
+import util.reflect.ValueGenerator.DefaultValueGenerator;
 
 /**
  * A ClassContext represents a class with its generic types resolved.
  */
 @SuppressWarnings("unchecked")
-@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
-@EqualsAndHashCode(of = {"actualClass", "context"}, callSuper = false)
 public class ClassContext<T> extends ContextualType<T> {
 
 	private static final Map<Type, ClassContext<?>> CACHE = new ConcurrentHashMap<>();
+	// The interned ClassContexts by structural equality, so that there is only one interned ClassContext for equal ones
+	private static final Map<ClassContext<?>, ClassContext<?>> CANONICAL = new ConcurrentHashMap<>();
+	private static final int MAX_GENERATION_PROFILES = 4;
 
 	private final Type originalType;
 
-	private Type resolvedType;
+	// the lazily computed analysis results below are volatile, or published together in an immutable holder, so that ClassContexts can be shared by threads
+	private volatile Type resolvedType;
 
 	@Getter
 	private final Class<T> actualClass;
@@ -44,21 +57,74 @@ public class ClassContext<T> extends ContextualType<T> {
 	private final Map<TypeVariable<?>, Type> context;
 	private final ClassContext<?> outerClass;
 
-	private Optional<ClassContext<?>> superclass;
-	private Map<Class<?>, ClassContext<?>> interfaces;
+	// The structural hash code of actualClass and context, computed once
+	private final int hash;
+	private volatile boolean interned;
 
-	private Optional<Constructor<T>> newInstanceConstructor;
-	private Object[] newInstanceArgs;
+	private volatile Optional<ClassContext<?>> superclass;
+	private volatile Map<Class<?>, ClassContext<?>> interfaces;
 
-	private final Map<Class<?>, ClassContext<?>> inferredImplementation = new HashMap<>();
+	private volatile Instantiation<T> instantiation;
+
+	/**
+	 * How instances are created: with the generated ClassAccessor if there is one, or else with the constructor found (null if none) and its default arguments.
+	 */
+	@RequiredArgsConstructor
+	private static class Instantiation<T> {
+		private final ClassAccessor<T> accessor;
+		private final Constructor<T> constructor;
+		private final Object[] args;
+	}
+
+	private final Map<Class<?>, ClassContext<?>> inferredImplementation = new ConcurrentHashMap<>();
+
+	private volatile long shallowSize;
+	private volatile Boolean deeplyImmutable;
+	private volatile Boolean reusable;
+	// the (int) constructor of java.util collection and map classes
+	private volatile Optional<Constructor<?>> capacityConstructor;
+
+	private volatile ContextualType<?> itemType;
+	private volatile ContextualType<?> mapKeyType;
+	private volatile ContextualType<?> mapValueType;
 
 	// Field values in this map will be exposed to outside, do not use internally for reflection purposes
-	Map<String, Field> fields;
+	// assigned last by initFields, so that fieldTypes and accessorFields are visible to the threads seeing it
+	volatile Map<String, Field> fields;
 	// Field keys in this map have accessible set to true and should be used internally for reflection purposes
 	Map<Field, ContextualType<?>> fieldTypes;
+	// Fields covered by a compile time generated ClassAccessor of their declaring class
+	private Map<Field, AccessorField> accessorFields;
+
+	@RequiredArgsConstructor
+	private static class AccessorField {
+		private final ClassAccessor<Object> accessor;
+		private final int index;
+	}
+
+	// See ValueGenerator#isPathIndependent, the profiles of the last decision keys used with this ClassContext, the most recent first
+	private volatile GenerationProfile[] generationProfiles = new GenerationProfile[0];
+
+	@RequiredArgsConstructor
+	private static class GenerationProfile {
+		// see ValueGenerator#getDecisionKey
+		private final Object key;
+		private final Class<?> implementationClass;
+		// the non-static fields not ignored by the generator
+		private final List<Map.Entry<Field, ContextualType<?>>> fields;
+	}
+
+	ClassContext(Type originalType, Class<T> actualClass, Map<TypeVariable<?>, Type> context, ClassContext<?> outerClass) {
+		this.originalType = originalType;
+		this.actualClass = actualClass;
+		this.context = context;
+		this.outerClass = outerClass;
+		this.hash = 31 * actualClass.hashCode() + context.hashCode();
+	}
 
 	static <R> ClassContext<R> ofParameterizedType(ParameterizedType parameterizedType) {
 		ClassContext<R> cached = (ClassContext<R>) CACHE.get(parameterizedType);
+		Metrics.INSTANCE.recordClassContextLookup(cached != null);
 		if (cached != null) {
 			return cached;
 		}
@@ -84,6 +150,7 @@ public class ClassContext<T> extends ContextualType<T> {
 
 	static <R> ClassContext<R> ofClass(Class<R> clazz) {
 		ClassContext<R> cached = (ClassContext<R>) CACHE.get(clazz);
+		Metrics.INSTANCE.recordClassContextLookup(cached != null);
 		if (cached != null) {
 			return cached;
 		}
@@ -115,7 +182,17 @@ public class ClassContext<T> extends ContextualType<T> {
 	}
 
 	public ClassContext<T> intern() {
-		return (ClassContext<T>) CACHE.computeIfAbsent(originalType, t -> this);
+		ClassContext<T> cached = (ClassContext<T>) CACHE.get(originalType);
+		if (cached != null) {
+			return cached;
+		}
+		ClassContext<T> canonical = (ClassContext<T>) CANONICAL.computeIfAbsent(this, c -> this);
+		canonical.interned = true;
+		return (ClassContext<T>) CACHE.computeIfAbsent(originalType, t -> canonical);
+	}
+
+	boolean isInterned() {
+		return CACHE.get(originalType) == this;
 	}
 
 	public <R> ClassContext<R> getOuterClass() {
@@ -160,25 +237,46 @@ public class ClassContext<T> extends ContextualType<T> {
 	}
 
 
-	private void computeConstructor() throws ReflectiveOperationException {
-		if (newInstanceConstructor != null) {
-			return;
+	private Instantiation<T> computeConstructor() {
+		Instantiation<T> result = instantiation;
+		if (result != null) {
+			return result;
+		}
+		ComputeConstructorEvent event = new ComputeConstructorEvent();
+		event.begin();
+		result = findConstructor();
+		instantiation = result;
+		if (event.shouldCommit()) {
+			event.actualClass = actualClass;
+			event.found = result.accessor != null || result.constructor != null;
+			event.commit();
+		}
+		return result;
+	}
+
+	private Instantiation<T> findConstructor() {
+		ClassAccessor<T> accessor = ClassUtil.getAccessor(actualClass);
+		if (accessor != null) {
+			return new Instantiation<>(accessor, null, null);
 		}
 		for (Constructor<T> constructor : (Constructor<T>[]) actualClass.getDeclaredConstructors()) {
 			if (constructor.trySetAccessible()) {
 				try {
-					Object[] args = Stream.of(constructor.getParameterTypes())
-							.map(paramType -> ClassUtil.PRIMITIVE_DEFAULTS.get(paramType))
-							.toArray(Object[]::new);
+					Object[] args = defaultArgs(constructor);
 					constructor.newInstance(args);
-					newInstanceConstructor = Optional.of(constructor);
-					newInstanceArgs = args;
-					return;
+					return new Instantiation<>(null, constructor, args);
 				} catch (ReflectiveOperationException e) {
+					Metrics.INSTANCE.recordConstructorProbeFailure();
 				}
 			}
 		}
-		newInstanceConstructor = Optional.ofNullable(null);
+		return new Instantiation<>(null, null, null);
+	}
+
+	private static Object[] defaultArgs(Constructor<?> constructor) {
+		return Stream.of(constructor.getParameterTypes())
+				.map(paramType -> ClassUtil.PRIMITIVE_DEFAULTS.get(paramType))
+				.toArray(Object[]::new);
 	}
 
 	/**
@@ -193,19 +291,25 @@ public class ClassContext<T> extends ContextualType<T> {
 	 * If this ClassContext requires an enclosing instance, the given outerInstance will be used, or one will be generated if the given outerInstance is null.
 	 */
 	public T newInstance(Object outerInstance) throws ReflectiveOperationException {
-		computeConstructor();
-		if (newInstanceConstructor.isEmpty()) {
+		Instantiation<T> theInstantiation = computeConstructor();
+		if (theInstantiation.accessor != null) {
+			if (outerInstance != null) {
+				throw new IllegalArgumentException("Class " + actualClass.getName() + " does not require an enclosing instance");
+			}
+			return theInstantiation.accessor.newInstance();
+		}
+		if (theInstantiation.constructor == null) {
 			throw new InstantiationException("Cannot find a suitable constructor for class " + actualClass.getName());
 		}
 		if (outerClass == null || ClassUtil.isStaticClass(actualClass)) {
 			if (outerInstance != null) {
 				throw new IllegalArgumentException("Class " + actualClass.getName() + " does not require an enclosing instance");
 			}
-			return newInstanceConstructor.get().newInstance(newInstanceArgs);
+			return theInstantiation.constructor.newInstance(theInstantiation.args);
 		}
-		Object[] args = newInstanceArgs.clone();
+		Object[] args = theInstantiation.args.clone();
 		args[0] = outerInstance != null ? outerInstance : outerClass.newInstance();
-		return newInstanceConstructor.get().newInstance(args);
+		return theInstantiation.constructor.newInstance(args);
 	}
 
 	private Field copyField(Field field) {
@@ -221,7 +325,9 @@ public class ClassContext<T> extends ContextualType<T> {
 		if (fields != null) {
 			return;
 		}
-		Map<String, Field> theFields = new LinkedHashMap<>();
+		ComputeFieldsEvent event = new ComputeFieldsEvent();
+		event.begin();
+		Set<String> fieldNames = new HashSet<>();
 		Map<Field, ContextualType<?>> theFieldTypes = new LinkedHashMap<>();
 		ClassContext<?> currentClass = this;
 		do {
@@ -231,18 +337,37 @@ public class ClassContext<T> extends ContextualType<T> {
 			} catch (InaccessibleObjectException | SecurityException e) {
 			}
 			for (Field field : declaredFields) {
-				if (field.isSynthetic() || theFields.containsKey(field.getName())) {
+				if (field.isSynthetic() || !fieldNames.add(field.getName())) {
 					continue;
 				}
-				theFields.put(field.getName(), copyField(field));
 				Type actualType = ClassUtil.getBound(TypeResolver.resolve(field.getGenericType(), currentClass.getContext()));
 				theFieldTypes.put(field, ClassUtil.analyze(actualType));
 			}
 			currentClass = currentClass.getSuperclass();
 		} while (currentClass != null);
 
-		fields = Collections.unmodifiableMap(theFields);
+		initFields(theFieldTypes);
+		if (event.shouldCommit()) {
+			event.type = toString();
+			event.fieldCount = theFieldTypes.size();
+			event.commit();
+		}
+	}
+
+	private void initFields(Map<Field, ContextualType<?>> theFieldTypes) {
+		Map<String, Field> theFields = new LinkedHashMap<>();
+		Map<Field, AccessorField> theAccessorFields = new HashMap<>();
+		for (Field field : theFieldTypes.keySet()) {
+			theFields.put(field.getName(), copyField(field));
+			ClassAccessor<Object> fieldAccessor = (ClassAccessor<Object>) ClassUtil.getAccessor(field.getDeclaringClass());
+			int accessorIndex = fieldAccessor == null ? -1 : List.of(fieldAccessor.getFieldNames()).indexOf(field.getName());
+			if (accessorIndex >= 0) {
+				theAccessorFields.put(field, new AccessorField(fieldAccessor, accessorIndex));
+			}
+		}
 		fieldTypes = Collections.unmodifiableMap(theFieldTypes);
+		accessorFields = theAccessorFields;
+		fields = Collections.unmodifiableMap(theFields);
 	}
 
 	Map<Field, ContextualType<?>> getFieldTypes() {
@@ -250,6 +375,123 @@ public class ClassContext<T> extends ContextualType<T> {
 		return fieldTypes;
 	}
 
+	/**
+	 * Get the value of the given field (a key of {@link #getFieldTypes()}) of the instance, through the generated ClassAccessor if there is one.
+	 */
+	Object getFieldValue(Field field, Object instance) throws IllegalAccessException {
+		AccessorField accessorField = accessorFields.get(field);
+		if (accessorField != null) {
+			return accessorField.accessor.get(instance, accessorField.index);
+		}
+		return field.get(instance);
+	}
+
+	/**
+	 * Set the value of the given field (a key of {@link #getFieldTypes()}) of the instance, through the generated ClassAccessor if there is one.
+	 */
+	void setFieldValue(Field field, Object instance, Object value) throws IllegalAccessException {
+		AccessorField accessorField = accessorFields.get(field);
+		if (accessorField != null) {
+			accessorField.accessor.set(instance, accessorField.index, value);
+			return;
+		}
+		field.set(instance, value);
+	}
+
+	/**
+	 * Whether instances of this class can never change, so that they can be shared instead of copied: the class is known to be immutable (see {@link ClassUtil#isKnownImmutable(Class)}),
+	 * or it is a final class (with an immutable outer class if it is an inner class) whose non-static fields, including inherited ones, are all final and of primitive or deeply immutable declared types.
+	 * Classes referencing each other only through such fields are deeply immutable together. The result is computed once and cached.
+	 * Date, which ClassUtil.isKnownImmutable treats as immutable for cloning, is mutable and therefore not deeply immutable.
+	 */
+	public boolean isDeeplyImmutable() {
+		Boolean immutable = deeplyImmutable;
+		if (immutable == null) {
+			Set<ClassContext<?>> visited = new HashSet<>();
+			immutable = computeDeeplyImmutable(visited);
+			// when false, the result of the other visited classes may depend on this one being assumed immutable, so they are not cached
+			if (immutable) {
+				for (ClassContext<?> classContext : visited) {
+					classContext.deeplyImmutable = true;
+				}
+			}
+			deeplyImmutable = immutable;
+		}
+		return immutable;
+	}
+
+	private boolean computeDeeplyImmutable(Set<ClassContext<?>> visited) {
+		if (deeplyImmutable != null) {
+			return deeplyImmutable;
+		}
+		if (Date.class.isAssignableFrom(actualClass)) {
+			return false;
+		}
+		if (ClassUtil.isKnownImmutable(actualClass)) {
+			return true;
+		}
+		if (!Modifier.isFinal(actualClass.getModifiers()) || actualClass.isArray()) {
+			return false;
+		}
+		if (!visited.add(this)) {
+			// assumed immutable while it is being analyzed
+			return true;
+		}
+		if (outerClass != null && !ClassUtil.isStaticClass(actualClass) && !outerClass.computeDeeplyImmutable(visited)) {
+			return false;
+		}
+		computeFields();
+		for (Map.Entry<Field, ContextualType<?>> entry : fieldTypes.entrySet()) {
+			Field field = entry.getKey();
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			if (!Modifier.isFinal(field.getModifiers())) {
+				return false;
+			}
+			ContextualType<?> fieldType = entry.getValue();
+			if (fieldType.getActualClass().isPrimitive()) {
+				continue;
+			}
+			if (!(fieldType instanceof ClassContext<?> fieldClass) || !fieldClass.computeDeeplyImmutable(visited)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether an existing instance of this class may be randomized in place, as randomizeInto does.
+	 * Immutable instances are not, since they may be shared with other graphs (e.g. by deepClone or InterningValueGenerator), nor are unmodifiable collections and maps.
+	 * The final fields of a reused instance are never reassigned, see {@link #randomizeFinalField}.
+	 */
+	boolean isReusable() {
+		Boolean result = reusable;
+		if (result == null) {
+			result = !ClassUtil.isKnownImmutable(actualClass) && !ClassUtil.isUnmodifiableContainer(actualClass) && !isDeeplyImmutable();
+			reusable = result;
+		}
+		return result;
+	}
+
+	/**
+	 * The approximate shallow size in bytes of an instance, see {@link ClassUtil#OBJECT_HEADER_SIZE}.
+	 */
+	long getShallowSize() {
+		if (shallowSize == 0) {
+			long size = ClassUtil.OBJECT_HEADER_SIZE;
+			for (Class<?> currentClass = actualClass; currentClass != null; currentClass = currentClass.getSuperclass()) {
+				for (Field field : currentClass.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())) {
+						size += ClassUtil.getSlotSize(field.getType());
+					}
+				}
+			}
+			shallowSize = ClassUtil.alignObjectSize(size);
+		}
+		return shallowSize;
+	}
+
 	public List<Field> getAllFields() {
 		computeFields();
 		return fields.values().stream().map(this::copyField).toList();
@@ -279,92 +521,458 @@ public class ClassContext<T> extends ContextualType<T> {
 		return type;
 	}
 
-	private <S> ClassContext<S> toImplementation(Class<S> clazz) {
-		return (ClassContext<S>) inferredImplementation.computeIfAbsent(clazz, c -> ClassContext.ofType(TypeResolver.newResolvedClassType(c, InferUtil.infer(c, this))));
+	// Accessors of the lazily computed analysis results for AnalysisCache, null means not computed yet
+
+	Type getOriginalType() {
+		return originalType;
+	}
+
+	Optional<Constructor<T>> getComputedConstructor() {
+		Instantiation<T> theInstantiation = instantiation;
+		return theInstantiation == null || theInstantiation.accessor != null ? null : Optional.ofNullable(theInstantiation.constructor);
+	}
+
+	void restoreConstructor(Constructor<T> constructor) {
+		if (instantiation != null || constructor != null && !constructor.trySetAccessible()) {
+			return;
+		}
+		ClassAccessor<T> accessor = ClassUtil.getAccessor(actualClass);
+		instantiation = accessor != null || constructor == null ? new Instantiation<>(accessor, null, null) : new Instantiation<>(null, constructor, defaultArgs(constructor));
+	}
+
+	Optional<ClassContext<?>> getComputedSuperclass() {
+		return superclass;
+	}
+
+	void restoreSuperclass(ClassContext<?> theSuperclass) {
+		if (superclass == null) {
+			superclass = Optional.ofNullable(theSuperclass);
+		}
+	}
+
+	Map<Class<?>, ClassContext<?>> getComputedInterfaces() {
+		return interfaces;
+	}
+
+	void restoreInterfaces(List<ClassContext<?>> theInterfaces) {
+		if (interfaces == null) {
+			LinkedHashMap<Class<?>, ClassContext<?>> result = new LinkedHashMap<>();
+			for (ClassContext<?> interfaceContext : theInterfaces) {
+				result.put(interfaceContext.getActualClass(), interfaceContext);
+			}
+			interfaces = Collections.unmodifiableMap(result);
+		}
+	}
+
+	Map<Field, ContextualType<?>> getComputedFieldTypes() {
+		return fieldTypes;
+	}
+
+	void restoreFieldTypes(Map<Field, ContextualType<?>> theFieldTypes) {
+		if (fields == null) {
+			initFields(theFieldTypes);
+		}
+	}
+
+	Map<Class<?>, ClassContext<?>> getInferredImplementations() {
+		return Collections.unmodifiableMap(inferredImplementation);
+	}
+
+	void restoreInferredImplementation(Class<?> implementationClass, ClassContext<?> implementation) {
+		inferredImplementation.putIfAbsent(implementationClass, implementation);
+	}
+
+	static Collection<ClassContext<?>> getInternedClassContexts() {
+		return CACHE.values();
+	}
+
+	<S> ClassContext<S> toImplementation(Class<S> clazz) {
+		// not computeIfAbsent, as the inference may recurse into this map
+		ClassContext<?> implementation = inferredImplementation.get(clazz);
+		if (implementation == null) {
+			implementation = ClassContext.ofType(TypeResolver.newResolvedClassType(clazz, InferUtil.infer(clazz, this)));
+			ClassContext<?> previous = inferredImplementation.putIfAbsent(clazz, implementation);
+			if (previous != null) {
+				implementation = previous;
+			}
+		}
+		return (ClassContext<S>) implementation;
+	}
+
+	/**
+	 * The ContextualType of the items if this ClassContext is a Collection.
+	 */
+	ContextualType<?> getItemType() {
+		if (itemType == null) {
+			ClassContext<?> collectionType = actualClass == Collection.class ? this : getInterface(Collection.class);
+			itemType = ClassUtil.analyze(collectionType.getContext().get(Collection.class.getTypeParameters()[0])).intern();
+		}
+		return itemType;
+	}
+
+	/**
+	 * The ContextualType of the keys if this ClassContext is a Map.
+	 */
+	ContextualType<?> getMapKeyType() {
+		if (mapKeyType == null) {
+			ClassContext<?> mapType = actualClass == Map.class ? this : getInterface(Map.class);
+			mapKeyType = ClassUtil.analyze(mapType.getContext().get(Map.class.getTypeParameters()[0])).intern();
+		}
+		return mapKeyType;
+	}
+
+	/**
+	 * The ContextualType of the values if this ClassContext is a Map.
+	 */
+	ContextualType<?> getMapValueType() {
+		if (mapValueType == null) {
+			ClassContext<?> mapType = actualClass == Map.class ? this : getInterface(Map.class);
+			mapValueType = ClassUtil.analyze(mapType.getContext().get(Map.class.getTypeParameters()[1])).intern();
+		}
+		return mapValueType;
+	}
+
+	/**
+	 * A new empty instance of this java.util collection or map class, created with its public (int) constructor with the initial capacity for the given number of items,
+	 * or null if this class has no such constructor. EnumSets and EnumMaps, which have no such constructors, are created for their enum type.
+	 */
+	Object newContainerInstance(int size) throws ReflectiveOperationException {
+		if (EnumSet.class.isAssignableFrom(actualClass)) {
+			return EnumSet.noneOf((Class<Enum>) getItemType().getActualClass());
+		}
+		if (EnumMap.class.isAssignableFrom(actualClass)) {
+			return new EnumMap<>((Class<Enum>) getMapKeyType().getActualClass());
+		}
+		if (capacityConstructor == null) {
+			Constructor<?> constructor = null;
+			if (actualClass.getPackageName().equals("java.util") && Modifier.isPublic(actualClass.getModifiers())) {
+				try {
+					constructor = actualClass.getConstructor(int.class);
+				} catch (NoSuchMethodException e) {
+				}
+			}
+			capacityConstructor = Optional.ofNullable(constructor);
+		}
+		return capacityConstructor.isPresent() ? capacityConstructor.get().newInstance(initialCapacity(size)) : null;
+	}
+
+	/**
+	 * The capacity to create this collection or map class with for the given number of items, so that it does not resize. Hash based classes are sized for their default load factor.
+	 * The capacity is at least 1, as some classes (e.g. PriorityQueue) reject a capacity of 0.
+	 */
+	int initialCapacity(int size) {
+		boolean hashed = HashMap.class.isAssignableFrom(actualClass) || HashSet.class.isAssignableFrom(actualClass)
+				|| Hashtable.class.isAssignableFrom(actualClass) || WeakHashMap.class.isAssignableFrom(actualClass);
+		return Math.max(1, hashed ? (int) Math.ceil(size / 0.75) : size);
+	}
+
+	/**
+	 * The decisions of a path independent ValueGenerator for this ClassContext, kept for the last few decision keys used with it (see {@link ValueGenerator#getDecisionKey()}).
+	 */
+	private GenerationProfile generationProfile(ValueGenerator generator) {
+		Object key = generator.getDecisionKey();
+		GenerationProfile[] profiles = generationProfiles;
+		for (GenerationProfile profile : profiles) {
+			if (profile.key.equals(key)) {
+				return profile;
+			}
+		}
+		List<Map.Entry<Field, ContextualType<?>>> generatedFields = new ArrayList<>();
+		for (Map.Entry<Field, ContextualType<?>> entry : fieldTypes.entrySet()) {
+			Field field = entry.getKey();
+			if (!Modifier.isStatic(field.getModifiers()) && !generator.isIgnoredField(this, "", fields.get(field.getName()))) {
+				generatedFields.add(entry);
+			}
+		}
+		GenerationProfile profile = new GenerationProfile(key, generator.getImplementationClass(this, ""), generatedFields);
+		GenerationProfile[] updated = new GenerationProfile[Math.min(profiles.length + 1, MAX_GENERATION_PROFILES)];
+		updated[0] = profile;
+		System.arraycopy(profiles, 0, updated, 1, updated.length - 1);
+		generationProfiles = updated;
+		return profile;
 	}
 
 	protected T randomInstance(ValueGenerator generator, RandomInstanceState state) throws ReflectiveOperationException {
+		Object reuse = state.takeReuse();
 		computeFields();
-		Class<?> implementationClass = generator.getImplementationClass(this, state.joinPath());
+		GenerationProfile profile = generator.isPathIndependent() ? generationProfile(generator) : null;
+		Class<?> implementationClass = profile != null ? profile.implementationClass : generator.getImplementationClass(this, state.joinPath());
 		if (implementationClass != null && implementationClass != actualClass) {
-			return (T) toImplementation(implementationClass).randomInstance(generator, state);
+			state.setReuse(reuse);
+			Object instance = toImplementation(implementationClass).randomInstance(generator, state);
+			if ((instance instanceof Collection || instance instanceof Map) && actualClass.isInterface() && generator.isImmutableCollection(this, state.joinPath())) {
+				instance = ClassUtil.toUnmodifiable(instance);
+			}
+			return (T) instance;
 		}
+		state.countNode();
+
+		CurrentInstanceContext creation = () -> {
+			boolean reused = reuse != null && reuse.getClass() == actualClass && isReusable();
+			boolean container = Collection.class.isAssignableFrom(actualClass) || Map.class.isAssignableFrom(actualClass);
+			// the size is decided first, so that the container can be created with the capacity for it
+			int size = container ? state.budgetCollectionSize(generator.getCollectionSize(this, state.joinPath())) : 0;
+			Object instance = reused ? reuse : container ? newContainerInstance(size) : null;
+			if (instance == null) {
+				instance = newInstance(outerClass == null || ClassUtil.isStaticClass(actualClass) ? null : outerClass.randomInstance(generator, state));
+			}
+			if (!reused) {
+				state.addBytes(getShallowSize());
+			}
+			state.pushInstance(this, instance);
+
+			// the items of a collection stored in a primitive array are generated in bulk if the ValueGenerator can, and counted as the boxed items would be
+			Object primitiveItems = instance instanceof PrimitiveCollection primitives ? Array.newInstance(primitives.getPrimitiveClass(), size) : null;
+			if (primitiveItems != null && generator.generateItems(getItemType(), state.joinPath(), primitiveItems)) {
+				state.countNodes(size);
+				state.addBytes((long) size * ClassUtil.getSlotSize(primitiveItems.getClass().getComponentType()));
+				((PrimitiveCollection) instance).setItems(primitiveItems);
+			} else if (instance instanceof Collection<?> collection) {
+				ContextualType<?> itemType = getItemType();
+				state.addBytes((long) size * ClassUtil.REFERENCE_SIZE);
+				if (reused && collection instanceof List<?> list && list.size() == size) {
+					for (int i = 0; i < size; i++) {
+						state.pushIndexPath(i);
+						state.setReuse(list.get(i));
+						((List<Object>) list).set(i, itemType.randomInstance(generator, state));
+						state.popPath();
+					}
+				} else {
+					if (reused) {
+						collection.clear();
+					}
+					for (int i = 0; i < size; i++) {
+						state.pushIndexPath(i);
+						((Collection<Object>) collection).add(itemType.randomInstance(generator, state));
+						state.popPath();
+					}
+				}
+			}
+			if (instance instanceof Map<?, ?> map) {
+				ContextualType<?> keyType = getMapKeyType();
+				ContextualType<?> valueType = getMapValueType();
+				state.addBytes((long) size * ClassUtil.MAP_ENTRY_SIZE);
+				if (reused) {
+					map.clear();
+				}
+				for (int i = 0; i < size; i++) {
+					state.pushIndexPath(i);
+					state.pushMapKeyPath();
+					Object mapKeyInstance = keyType.randomInstance(generator, state);
+					state.popPath();
+					state.pushMapValuePath();
+					Object mapValueInstance = valueType.randomInstance(generator, state);
+					state.popPath();
+					((Map<Object, Object>) map).put(mapKeyInstance, mapValueInstance);
+					state.popPath();
+				}
+			}
 
+			for (Map.Entry<Field, ContextualType<?>> entry : profile != null ? profile.fields : fieldTypes.entrySet()) {
+				Field field = entry.getKey();
+				if (profile == null && (Modifier.isStatic(field.getModifiers()) || generator.isIgnoredField(this, state.joinPath(), fields.get(field.getName())))) {
+					continue;
+				}
+
+				ContextualType<?> fieldType = entry.getValue();
+				state.pushFieldPath(field.getName());
+				if (reused && Modifier.isFinal(field.getModifiers())) {
+					randomizeFinalField(field, fieldType, instance, generator, state);
+				} else {
+					if (reused) {
+						state.setReuse(getFieldValue(field, instance));
+					}
+					setFieldValue(field, instance, fieldType.randomInstance(generator, state));
+				}
+				state.popPath();
+			}
+
+			state.popInstance(this);
+			return instance;
+		};
 		CurrentInstanceContext instanceCreator = () -> {
 			return generator.generate(
 					this,
 					state.joinPath(),
 					() -> {
-						Object instance = newInstance(outerClass == null || ClassUtil.isStaticClass(actualClass) ? null : outerClass.randomInstance(generator, state));
-						state.pushInstance(this, instance);
+						if (state.isBudgetExhausted()) {
+							return generator.onRecursion(this, state.joinPath(), state.getInstances(this), creation);
+						}
+						return creation.randomInstance();
+					});
+		};
+		List<Object> recursed = state.getInstances(this);
+		Object instance;
+		if (recursed.size() > 0) {
+			instance = generator.onRecursion(this, state.joinPath(), recursed, instanceCreator);
+		} else {
+			instance = instanceCreator.randomInstance();
+		}
+		return (T) instance;
+	}
 
-						if (instance instanceof Collection<?> collection) {
-							ClassContext<?> collectionFieldType = (ClassContext<?>) this;
-							if (collectionFieldType.getActualClass() != Collection.class) {
-								collectionFieldType = collectionFieldType.getInterface(Collection.class);
-							}
-							ContextualType<?> itemType = ClassUtil.analyze(collectionFieldType.getContext().get(Collection.class.getTypeParameters()[0])).intern();
+	/**
+	 * Randomize the value of a final field of a reused instance without reassigning the field. Mutable objects, arrays, collections and maps are randomized in place,
+	 * and the collections, maps and arrays the ValueGenerator replaces anyway (e.g. by another class) are refilled with the generated items. Other values, e.g. primitives and immutable objects, are left alone.
+	 */
+	private void randomizeFinalField(Field field, ContextualType<?> fieldType, Object instance, ValueGenerator generator, RandomInstanceState state) throws ReflectiveOperationException {
+		if (fieldType.getActualClass().isPrimitive()) {
+			return;
+		}
+		Object current = getFieldValue(field, instance);
+		if (current == null || !ClassUtil.isReusableInstance(current)) {
+			return;
+		}
+		state.setReuse(current);
+		Object value = fieldType.randomInstance(generator, state);
+		if (value != current) {
+			ClassUtil.refill(current, value);
+		}
+	}
+
+	/**
+	 * Mutate the given instance in place by regenerating up to the given number of randomly picked fields, list/array items or map values, found by walking the instance.
+	 * Each is picked with probability proportional to the size of its subtree, and regenerated with the ValueGenerator as randomInstance would. The number of regenerated subtrees is returned.
+	 * The picks are drawn from the Random of the ValueGenerator if it is a DefaultValueGenerator.
+	 * Every call walks the whole instance graph: to mutate the same instance repeatedly at the cost of the regenerated subtrees only, keep its {@link #mutator(Object, ValueGenerator)} instead.
+	 */
+	public int mutate(T instance, ValueGenerator generator, int mutations) throws ReflectiveOperationException {
+		return mutator(instance, generator).mutate(mutations);
+	}
+
+	/**
+	 * Same as {@link #mutate(Object, ValueGenerator, int)}, with the picks drawn from the given Random.
+	 */
+	public int mutate(T instance, ValueGenerator generator, int mutations, Random random) throws ReflectiveOperationException {
+		return mutator(instance, generator).mutate(mutations, random);
+	}
+
+	/**
+	 * An InstanceMutator of the given instance, which walks the instance graph once and keeps what it found across its mutate calls. See {@link InstanceMutator}.
+	 */
+	public InstanceMutator<T> mutator(T instance, ValueGenerator generator) throws ReflectiveOperationException {
+		return new InstanceMutator<>(instance, this, generator);
+	}
+
+	/**
+	 * Generate the given number of random rows of this ClassContext as columns of its fields, without creating instances. See {@link ColumnBatch}.
+	 */
+	public ColumnBatch randomColumns(ValueGenerator generator, int size) throws ReflectiveOperationException {
+		ColumnBatch batch = new ColumnBatch(this, generator, size);
+		batch.fill(generator);
+		return batch;
+	}
+
+	/**
+	 * Regenerate all the rows of the given ColumnBatch of this ClassContext in place.
+	 */
+	public void randomColumns(ValueGenerator generator, ColumnBatch batch) throws ReflectiveOperationException {
+		if (!equals(batch.getType())) {
+			throw new IllegalArgumentException("ColumnBatch of " + batch.getType() + " cannot be filled as " + this);
+		}
+		batch.fill(generator);
+	}
+
+	void generate(ValueGenerator generator, GenerationVisitor visitor, RandomInstanceState state) throws ReflectiveOperationException {
+		computeFields();
+		Class<?> implementationClass = generator.getImplementationClass(this, state.joinPath());
+		if (implementationClass != null && implementationClass != actualClass) {
+			toImplementation(implementationClass).generate(generator, visitor, state);
+			return;
+		}
+
+		String path = state.joinPath();
+		CurrentInstanceContext instanceCreator = () -> {
+			return generator.generate(
+					this,
+					path,
+					() -> {
+						// the path identifies the instance being generated, since no instance is created
+						state.pushInstance(this, path);
 
-							int size = generator.getCollectionSize(this, state.joinPath());
+						if (Collection.class.isAssignableFrom(actualClass)) {
+							ContextualType<?> itemType = getItemType();
+							int size = generator.getCollectionSize(this, path);
+							visitor.beginCollection(this, path, size);
 							for (int i = 0; i < size; i++) {
 								state.pushIndexPath(i);
-								((Collection<Object>) collection).add(itemType.randomInstance(generator, state));
+								itemType.generate(generator, visitor, state);
 								state.popPath();
 							}
-						}
-						if (instance instanceof Map<?, ?> map) {
-							ClassContext<?> mapFieldType = (ClassContext<?>) this;
-							if (mapFieldType.getActualClass() != Map.class) {
-								mapFieldType = mapFieldType.getInterface(Map.class);
-							}
-							Map<TypeVariable<?>, Type> mapTypeMap = mapFieldType.getContext();
-							ContextualType<?> keyType = ClassUtil.analyze(mapTypeMap.get(Map.class.getTypeParameters()[0])).intern();
-							ContextualType<?> valueType = ClassUtil.analyze(mapTypeMap.get(Map.class.getTypeParameters()[1])).intern();
-
-							int size = generator.getCollectionSize(this, state.joinPath());;
+							visitor.endCollection();
+						} else if (Map.class.isAssignableFrom(actualClass)) {
+							ContextualType<?> keyType = getMapKeyType();
+							ContextualType<?> valueType = getMapValueType();
+							int size = generator.getCollectionSize(this, path);
+							visitor.beginMap(this, path, size);
 							for (int i = 0; i < size; i++) {
 								state.pushIndexPath(i);
 								state.pushMapKeyPath();
-								Object mapKeyInstance = keyType.randomInstance(generator, state);
+								visitor.mapKey();
+								keyType.generate(generator, visitor, state);
 								state.popPath();
 								state.pushMapValuePath();
-								Object mapValueInstance = valueType.randomInstance(generator, state);
+								visitor.mapValue();
+								valueType.generate(generator, visitor, state);
 								state.popPath();
-								((Map<Object, Object>) map).put(mapKeyInstance, mapValueInstance);
 								state.popPath();
 							}
-						}
-
-						for (Map.Entry<Field, ContextualType<?>> entry : fieldTypes.entrySet()) {
-							Field field = entry.getKey();
-							if (Modifier.isStatic(field.getModifiers())) {
-								continue;
-							}
-							if (generator.isIgnoredField(this, state.joinPath(), fields.get(field.getName()))) {
-								continue;
+							visitor.endMap();
+						} else {
+							visitor.beginObject(this, path);
+							for (Map.Entry<Field, ContextualType<?>> entry : fieldTypes.entrySet()) {
+								Field field = entry.getKey();
+								if (Modifier.isStatic(field.getModifiers())) {
+									continue;
+								}
+								if (generator.isIgnoredField(this, path, fields.get(field.getName()))) {
+									continue;
+								}
+
+								state.pushFieldPath(field.getName());
+								visitor.field(fields.get(field.getName()));
+								entry.getValue().generate(generator, visitor, state);
+								state.popPath();
 							}
-
-							ContextualType<?> fieldType = entry.getValue();
-							state.pushFieldPath(field.getName());
-							field.set(instance, fieldType.randomInstance(generator, state));
-							state.popPath();
+							visitor.endObject();
 						}
 
 						state.popInstance(this);
-						return instance;
+						return GENERATED;
 					});
 		};
 		List<Object> recursed = state.getInstances(this);
 		Object instance;
 		if (recursed.size() > 0) {
-			instance = generator.onRecursion(this, state.joinPath(), recursed, instanceCreator);
+			instance = generator.onRecursion(this, path, recursed, instanceCreator);
 		} else {
 			instance = instanceCreator.randomInstance();
 		}
-		return (T) instance;
+		if (instance != GENERATED) {
+			visitor.value(this, path, instance);
+		}
 	}
 
 
+	/**
+	 * ClassContexts are equal if their actual classes and type variable contexts are. Interned ClassContexts are unique, so two of them are only equal if they are the same instance.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ClassContext<?> other) || hash != other.hash || interned && other.interned) {
+			return false;
+		}
+		return actualClass == other.actualClass && context.equals(other.context);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		return actualClass.getName() + " " + context;
@@ -0,0 +1,186 @@
+package util.reflect;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.RequiredArgsConstructor;
+import util.reflect.ClassUtil.CloneOptions;
+
+/**
+ * The compiled non-static fields and outer instance field of a class, shared by deepClone, deepCopyInto and the deep comparison of object graphs,
+ * with primitive fields read and written with the primitive Field accessors instead of boxing.
+ *
+ * The decisions of a cacheable CloneOptions (see {@link CloneOptions#isCacheable()}) are kept per class in a CloneProfile, for the last such CloneOptions used with the class.
+ */
+class ClassPlan {
+
+	private static final ClassValue<ClassPlan> PLANS = new ClassValue<>() {
+		@Override
+		protected ClassPlan computeValue(Class<?> clazz) {
+			return new ClassPlan(clazz);
+		}
+	};
+
+	private static final ClassValue<CloneProfile[]> PROFILES = new ClassValue<>() {
+		@Override
+		protected CloneProfile[] computeValue(Class<?> clazz) {
+			return new CloneProfile[1];
+		}
+	};
+
+	private static final ClassValue<Boolean> VALUE_EQUALS = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(Class<?> clazz) {
+			try {
+				return clazz.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+	};
+
+	enum Kind {
+		BOOLEAN, BYTE, CHAR, SHORT, INT, LONG, FLOAT, DOUBLE, REFERENCE
+	}
+
+	@RequiredArgsConstructor
+	static class FieldPlan {
+		final Field field;
+		final Field exposedField;
+		final Kind kind;
+
+		boolean primitiveEquals(Object a, Object b) throws IllegalAccessException {
+			return switch (kind) {
+				case BOOLEAN -> field.getBoolean(a) == field.getBoolean(b);
+				case BYTE -> field.getByte(a) == field.getByte(b);
+				case CHAR -> field.getChar(a) == field.getChar(b);
+				case SHORT -> field.getShort(a) == field.getShort(b);
+				case INT -> field.getInt(a) == field.getInt(b);
+				case LONG -> field.getLong(a) == field.getLong(b);
+				case FLOAT -> Float.floatToIntBits(field.getFloat(a)) == Float.floatToIntBits(field.getFloat(b));
+				case DOUBLE -> Double.doubleToLongBits(field.getDouble(a)) == Double.doubleToLongBits(field.getDouble(b));
+				case REFERENCE -> throw new IllegalStateException();
+			};
+		}
+
+		int primitiveHashCode(Object object) throws IllegalAccessException {
+			return switch (kind) {
+				case BOOLEAN -> Boolean.hashCode(field.getBoolean(object));
+				case BYTE -> Byte.hashCode(field.getByte(object));
+				case CHAR -> Character.hashCode(field.getChar(object));
+				case SHORT -> Short.hashCode(field.getShort(object));
+				case INT -> Integer.hashCode(field.getInt(object));
+				case LONG -> Long.hashCode(field.getLong(object));
+				case FLOAT -> Float.hashCode(field.getFloat(object));
+				case DOUBLE -> Double.hashCode(field.getDouble(object));
+				case REFERENCE -> throw new IllegalStateException();
+			};
+		}
+
+		/**
+		 * Copy the primitive field from source to target, unless already equal.
+		 */
+		void copyPrimitive(Object source, Object target) throws IllegalAccessException {
+			if (primitiveEquals(source, target)) {
+				return;
+			}
+			switch (kind) {
+				case BOOLEAN -> field.setBoolean(target, field.getBoolean(source));
+				case BYTE -> field.setByte(target, field.getByte(source));
+				case CHAR -> field.setChar(target, field.getChar(source));
+				case SHORT -> field.setShort(target, field.getShort(source));
+				case INT -> field.setInt(target, field.getInt(source));
+				case LONG -> field.setLong(target, field.getLong(source));
+				case FLOAT -> field.setFloat(target, field.getFloat(source));
+				case DOUBLE -> field.setDouble(target, field.getDouble(source));
+				case REFERENCE -> throw new IllegalStateException();
+			}
+		}
+	}
+
+	/**
+	 * The decisions of a cacheable CloneOptions for a class: whether it is reassignable, and the fields not ignored, which are null for reassignable classes and arrays.
+	 */
+	@RequiredArgsConstructor
+	static class CloneProfile {
+		final CloneOptions options;
+		final boolean reassignable;
+		final FieldPlan[] fields;
+	}
+
+	final ClassContext<?> classContext;
+	final Field outerInstanceField;
+	final FieldPlan[] fields;
+
+	private ClassPlan(Class<?> clazz) {
+		classContext = (ClassContext<?>) ClassUtil.analyze(clazz).intern();
+		Field outerField = null;
+		for (Field field : clazz.getDeclaredFields()) {
+			if (field.isSynthetic() && field.getName().startsWith("this$")) {
+				field.setAccessible(true);
+				outerField = field;
+			}
+		}
+		outerInstanceField = outerField;
+		List<FieldPlan> theFields = new ArrayList<>();
+		for (Field field : classContext.getFieldTypes().keySet()) {
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			// fields with a generated ClassAccessor are read through it, boxed
+			Kind kind = field.getType().isPrimitive() && ClassUtil.getAccessor(field.getDeclaringClass()) == null ? Kind.valueOf(field.getType().getName().toUpperCase()) : Kind.REFERENCE;
+			theFields.add(new FieldPlan(field, classContext.fields.get(field.getName()), kind));
+		}
+		fields = theFields.toArray(FieldPlan[]::new);
+	}
+
+	static ClassPlan of(Class<?> clazz) {
+		return PLANS.get(clazz);
+	}
+
+	/**
+	 * The CloneProfile of the class for the given cacheable CloneOptions, computed if the last one used with the class was for other CloneOptions.
+	 */
+	static CloneProfile profile(Class<?> clazz, CloneOptions options) {
+		CloneProfile[] slot = PROFILES.get(clazz);
+		CloneProfile profile = slot[0];
+		if (profile == null || profile.options != options) {
+			boolean reassignable = options.isReassignable(clazz);
+			profile = new CloneProfile(options, reassignable, reassignable || clazz.isArray() ? null : of(clazz).fields(options));
+			slot[0] = profile;
+		}
+		return profile;
+	}
+
+	/**
+	 * Whether the class overrides the identity equals of Object.
+	 */
+	static boolean hasValueEquals(Class<?> clazz) {
+		return VALUE_EQUALS.get(clazz);
+	}
+
+	static boolean isReassignable(Class<?> clazz, CloneOptions options) {
+		return options.isCacheable() ? profile(clazz, options).reassignable : options.isReassignable(clazz);
+	}
+
+	/**
+	 * The fields of the class of this plan not ignored by the CloneOptions, from its CloneProfile if the CloneOptions is cacheable.
+	 */
+	FieldPlan[] fields(Class<?> clazz, CloneOptions options) {
+		// reassignable classes have no cached fields, but may still be compared structurally if they do not implement equals
+		FieldPlan[] profileFields = options.isCacheable() ? profile(clazz, options).fields : null;
+		return profileFields != null ? profileFields : fields(options);
+	}
+
+	private FieldPlan[] fields(CloneOptions options) {
+		List<FieldPlan> theFields = new ArrayList<>(fields.length);
+		for (FieldPlan fieldPlan : fields) {
+			if (!options.isIgnoredField(fieldPlan.exposedField)) {
+				theFields.add(fieldPlan);
+			}
+		}
+		return theFields.toArray(FieldPlan[]::new);
+	}
+}
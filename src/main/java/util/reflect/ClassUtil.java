@@ -1,5 +1,6 @@
 package util.reflect;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
@@ -8,6 +9,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -15,16 +17,38 @@ import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.OffsetTime;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.RandomAccess;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import util.reflect.ClassUtil.CloneOptions.DefaultCloneOptions;
+import util.reflect.ClassPlan.FieldPlan;
+import util.reflect.ClassPlan.Kind;
+import util.reflect.JfrEvents.AnalyzeEvent;
+import util.reflect.JfrEvents.DeepCloneEvent;
 
 @SuppressWarnings("unchecked")
 public class ClassUtil {
@@ -43,6 +67,27 @@ public class ClassUtil {
 		PRIMITIVE_DEFAULTS = Collections.unmodifiableMap(map);
 	}
 
+	/**
+	 * Sizes in bytes used to approximate shallow sizes of instances, assuming a 64-bit JVM with compressed class pointers and references.
+	 */
+	static final int OBJECT_HEADER_SIZE = 12;
+	static final int ARRAY_HEADER_SIZE = 16;
+	static final int REFERENCE_SIZE = 4;
+	// a HashMap.Node with the reference to it in the table
+	static final int MAP_ENTRY_SIZE = 36;
+
+	static int getSlotSize(Class<?> clazz) {
+		if (clazz == long.class || clazz == double.class) return 8;
+		if (clazz == int.class || clazz == float.class) return 4;
+		if (clazz == short.class || clazz == char.class) return 2;
+		if (clazz == byte.class || clazz == boolean.class) return 1;
+		return REFERENCE_SIZE;
+	}
+
+	static long alignObjectSize(long size) {
+		return (size + 7) & ~7L;
+	}
+
 	static {
 		for (Class<?> primitive : PRIMITIVE_DEFAULTS.keySet()) {
 			analyze(primitive).intern();
@@ -52,6 +97,26 @@ public class ClassUtil {
 				Instant.class, LocalDate.class, LocalTime.class, LocalDateTime.class, OffsetTime.class, OffsetDateTime.class, ZonedDateTime.class)) {
 			analyze(clazz).intern();
 		}
+
+		Metrics.register();
+
+		String analysisCache = System.getProperty(AnalysisCache.PROPERTY);
+		if (analysisCache != null) {
+			Path path = Path.of(analysisCache);
+			try {
+				AnalysisCache.load(path);
+			} catch (IOException e) {
+				// an unreadable cache only means that the classes are analyzed on demand
+			}
+			if (Boolean.getBoolean(AnalysisCache.SAVE_ON_EXIT_PROPERTY)) {
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						AnalysisCache.save(path);
+					} catch (IOException e) {
+					}
+				}));
+			}
+		}
 	}
 
 	public static abstract class TypeReference<T> {
@@ -68,6 +133,24 @@ public class ClassUtil {
 		}
 	}
 
+	private static class Accessors {
+		private static final Map<Class<?>, ClassAccessor<?>> ACCESSORS;
+		static {
+			Map<Class<?>, ClassAccessor<?>> map = new HashMap<>();
+			for (ClassAccessor<?> accessor : ServiceLoader.load(ClassAccessor.class)) {
+				map.put(accessor.getAccessedClass(), accessor);
+			}
+			ACCESSORS = Collections.unmodifiableMap(map);
+		}
+	}
+
+	/**
+	 * Get the compile time generated ClassAccessor of the given class, or null if there is none.
+	 */
+	static <T> ClassAccessor<T> getAccessor(Class<T> clazz) {
+		return (ClassAccessor<T>) Accessors.ACCESSORS.get(clazz);
+	}
+
 	public static <T> T getOuterInstance(Object object) throws ReflectiveOperationException {
 		List<Field> outerInstanceFields = Arrays.stream(object.getClass().getDeclaredFields()).filter(Field::isSynthetic).filter(field -> field.getName().startsWith("this$")).toList();
 		if (outerInstanceFields.size() == 0) {
@@ -165,15 +248,31 @@ public class ClassUtil {
 	}
 
 	public static <S, T extends ContextualType<S>> T analyze(Class<S> clazz) {
-		if (clazz.isArray()) {
-			return (T) ArrayContext.ofClass(clazz);
-		}
-		return (T) ClassContext.ofClass(clazz);
+		return analyzeAndRecord(clazz);
 	}
 
 	public static <T extends ContextualType<?>> T analyze(Type type) {
+		return analyzeAndRecord(type);
+	}
+
+	private static <T extends ContextualType<?>> T analyzeAndRecord(Type type) {
+		AnalyzeEvent event = new AnalyzeEvent();
+		event.begin();
+		T result = analyzeType(type);
+		if (event.shouldCommit()) {
+			event.type = type.getTypeName();
+			event.cacheHit = result.isInterned();
+			event.commit();
+		}
+		return result;
+	}
+
+	private static <T extends ContextualType<?>> T analyzeType(Type type) {
 		if (type instanceof Class<?> clazz) {
-			return (T) analyze(clazz);
+			if (clazz.isArray()) {
+				return (T) ArrayContext.ofClass(clazz);
+			}
+			return (T) ClassContext.ofClass(clazz);
 		}
 		if (type instanceof GenericArrayType theType) {
 			return (T) ArrayContext.ofGenericArrayType(theType);
@@ -182,7 +281,7 @@ public class ClassUtil {
 			return (T) ClassContext.ofParameterizedType(theType);
 		}
 		if (type instanceof TypeVariable<?> || type instanceof WildcardType) {
-			return analyze(getBound(type));
+			return analyzeType(getBound(type));
 		}
 		throw new IllegalArgumentException("Unrecognized type " + type);
 	}
@@ -192,6 +291,35 @@ public class ClassUtil {
 	}
 
 
+	/**
+	 * Whether the given class is one of the JDK classes known to be immutable: primitives and their boxes, String, enums, Class and the date/time classes.
+	 */
+	public static boolean isKnownImmutable(Class<?> clazz) {
+		if (clazz == void.class || clazz == Void.class) return true;
+		if (clazz == boolean.class || clazz == Boolean.class) return true;
+		if (clazz == byte.class || clazz == Byte.class) return true;
+		if (clazz == char.class || clazz == Character.class) return true;
+		if (clazz == short.class || clazz == Short.class) return true;
+		if (clazz == int.class || clazz == Integer.class) return true;
+		if (clazz == long.class || clazz == Long.class) return true;
+		if (clazz == float.class || clazz == Float.class) return true;
+		if (clazz == double.class || clazz == Double.class) return true;
+		if (clazz == String.class) return true;
+		if (clazz.isEnum() || clazz == Enum.class) return true;
+
+		if (clazz == Date.class) return true;
+		if (clazz == Instant.class) return true;
+		if (clazz == LocalDate.class) return true;
+		if (clazz == LocalTime.class) return true;
+		if (clazz == LocalDateTime.class) return true;
+		if (clazz == OffsetTime.class) return true;
+		if (clazz == OffsetDateTime.class) return true;
+		if (clazz == ZonedDateTime.class) return true;
+
+		if (clazz == Class.class) return true;
+		return false;
+	}
+
 	public interface CloneOptions {
 		/**
 		 * Objects of reassignable classes will not be cloned.
@@ -202,69 +330,194 @@ public class ClassUtil {
 		 * This is useful in ignoring internal fields of some classes, like the private field "size" of an ArrayList.
 		 */
 		boolean isIgnoredField(Field field);
+		/**
+		 * Whether the answers of isReassignable and isIgnoredField depend only on their argument, so that they can be computed once per class and cached for this CloneOptions instance.
+		 */
+		default boolean isCacheable() {
+			return false;
+		}
 
+		/**
+		 * Cacheable, so subclasses whose answers may change over time should override isCacheable to return false.
+		 */
 		public static class DefaultCloneOptions implements CloneOptions {
+			@Override
+			public boolean isCacheable() {
+				return true;
+			}
 			public boolean isReassignable(Class<?> clazz) {
-				if (clazz == void.class || clazz == Void.class) return true;
-				if (clazz == boolean.class || clazz == Boolean.class) return true;
-				if (clazz == byte.class || clazz == Byte.class) return true;
-				if (clazz == char.class || clazz == Character.class) return true;
-				if (clazz == short.class || clazz == Short.class) return true;
-				if (clazz == int.class || clazz == Integer.class) return true;
-				if (clazz == long.class || clazz == Long.class) return true;
-				if (clazz == float.class || clazz == Float.class) return true;
-				if (clazz == double.class || clazz == Double.class) return true;
-				if (clazz == String.class) return true;
-				if (clazz.isEnum() || clazz == Enum.class) return true;
-
-				if (clazz == Date.class) return true;
-				if (clazz == Instant.class) return true;
-				if (clazz == LocalDate.class) return true;
-				if (clazz == LocalTime.class) return true;
-				if (clazz == LocalDateTime.class) return true;
-				if (clazz == OffsetTime.class) return true;
-				if (clazz == OffsetDateTime.class) return true;
-				if (clazz == ZonedDateTime.class) return true;
-
-				if (clazz == Class.class) return true;
-				return false;
+				return isKnownImmutable(clazz) || isDeeplyImmutable(clazz);
+			}
+			/**
+			 * Whether instances of the given class, which is not known to be immutable, can be shared instead of cloned.
+			 * By default this is {@link ClassContext#isDeeplyImmutable()}, override to declare other classes immutable or to turn the analysis off.
+			 * Shared instances stay safe as the in place operations of this library (randomizeInto, ClassContext.mutate and deepCopyInto) never change immutable instances, they replace them.
+			 */
+			protected boolean isDeeplyImmutable(Class<?> clazz) {
+				return !clazz.isArray() && !clazz.isPrimitive() && ((ClassContext<?>) analyze(clazz).intern()).isDeeplyImmutable();
 			}
 			public boolean isIgnoredField(Field field) {
 				String packageName = field.getDeclaringClass().getPackageName();
-				return packageName.startsWith("java.") || packageName.startsWith("javax.");
+				return packageName.startsWith("java.") || packageName.startsWith("javax.") || PrimitiveCollection.isInternalField(field);
 			}
 		}
 	}
 
+	/**
+	 * The CloneOptions used when none is given, shared so that its cached decisions are reused across calls.
+	 */
+	static final CloneOptions DEFAULT_CLONE_OPTIONS = new DefaultCloneOptions();
+
+	/**
+	 * Whether the class is one of the unmodifiable JDK collections and maps, of List.of, Set.of, Map.of and such, and of the Collections.unmodifiable wrappers, which cannot be created empty and filled.
+	 */
+	static boolean isUnmodifiableContainer(Class<?> clazz) {
+		return isImmutableCollection(clazz) || clazz.getName().startsWith("java.util.Collections$Unmodifiable");
+	}
+
+	/**
+	 * Whether the class is one of the immutable JDK collections and maps of List.of, Set.of, Map.of and such, which unlike the Collections.unmodifiable views have no mutable backing collection.
+	 */
+	static boolean isImmutableCollection(Class<?> clazz) {
+		return clazz.getName().startsWith("java.util.ImmutableCollections$");
+	}
+
+	/**
+	 * Whether the given object may be changed in place by randomizeInto, ClassContext.mutate and deepCopyInto: it is an array, or an instance of a reusable class (see {@link ClassContext#isReusable()}).
+	 */
+	static boolean isReusableInstance(Object object) {
+		Class<?> clazz = object.getClass();
+		return clazz.isArray() || !isKnownImmutable(clazz) && ClassPlan.of(clazz).classContext.isReusable();
+	}
+
+	/**
+	 * Replace the items of the given mutable collection, map or array, held by a final field which cannot be reassigned, with the ones of the given value of the same kind.
+	 * Arrays get as many items as fit, and a null value empties collections and maps. Returns false if the target cannot be refilled (e.g. a fixed-size list), in which case it is left unchanged.
+	 */
+	static boolean refill(Object target, Object value) {
+		try {
+			if (target instanceof Collection<?> collection && (value == null || value instanceof Collection) && !isUnmodifiableContainer(target.getClass())) {
+				collection.clear();
+				if (value != null) {
+					((Collection<Object>) collection).addAll((Collection<?>) value);
+				}
+				return true;
+			}
+			if (target instanceof Map<?, ?> map && (value == null || value instanceof Map) && !isUnmodifiableContainer(target.getClass())) {
+				map.clear();
+				if (value != null) {
+					((Map<Object, Object>) map).putAll((Map<?, ?>) value);
+				}
+				return true;
+			}
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+		if (target.getClass().isArray() && value != null && value.getClass() == target.getClass()) {
+			System.arraycopy(value, 0, target, 0, Math.min(Array.getLength(value), Array.getLength(target)));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * A new Collections.unmodifiable view of the same kind as the given one, of a new collection of the given items, or map of the given entries, in their iteration order.
+	 * The collection behind the given view cannot be reached without opening java.util, so it is replaced by a TreeSet or TreeMap with the same comparator for sorted views,
+	 * an ArrayList (a LinkedList if the view is not RandomAccess), a LinkedHashSet or a LinkedHashMap.
+	 */
+	static Object copyUnmodifiableView(Object view, Object items) {
+		if (view instanceof Collection<?>) {
+			Collection<Object> theItems = (Collection<Object>) items;
+			if (view instanceof SortedSet<?> sortedSet) {
+				TreeSet<Object> set = new TreeSet<>((Comparator<Object>) sortedSet.comparator());
+				set.addAll(theItems);
+				return view instanceof NavigableSet ? Collections.unmodifiableNavigableSet(set) : Collections.unmodifiableSortedSet(set);
+			}
+			if (view instanceof Set) {
+				return Collections.unmodifiableSet(new LinkedHashSet<>(theItems));
+			}
+			if (view instanceof List) {
+				return Collections.unmodifiableList(view instanceof RandomAccess ? new ArrayList<>(theItems) : new LinkedList<>(theItems));
+			}
+			return Collections.unmodifiableCollection(new ArrayList<>(theItems));
+		}
+		Map<Object, Object> entries = (Map<Object, Object>) items;
+		if (view instanceof SortedMap<?, ?> sortedMap) {
+			TreeMap<Object, Object> map = new TreeMap<>((Comparator<Object>) sortedMap.comparator());
+			map.putAll(entries);
+			return view instanceof NavigableMap ? Collections.unmodifiableNavigableMap(map) : Collections.unmodifiableSortedMap(map);
+		}
+		return Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+	}
+
+	/**
+	 * An unmodifiable version of the given new collection or map: a compact copy made by List.copyOf, Set.copyOf or Map.copyOf,
+	 * or an unmodifiable wrapper of it if it contains null, which those do not accept, or if it is an EnumSet or EnumMap, which are compact already.
+	 */
+	static Object toUnmodifiable(Object container) {
+		if (container instanceof EnumSet<?> enumSet) {
+			return Collections.unmodifiableSet(enumSet);
+		}
+		if (container instanceof EnumMap<?, ?> enumMap) {
+			return Collections.unmodifiableMap(enumMap);
+		}
+		if (container instanceof Set<?> set) {
+			return set.contains(null) ? Collections.unmodifiableSet(set) : Set.copyOf(set);
+		}
+		if (container instanceof Collection<?> collection) {
+			if (collection.contains(null)) {
+				return Collections.unmodifiableList(collection instanceof List<?> list ? list : new ArrayList<>(collection));
+			}
+			return List.copyOf(collection);
+		}
+		Map<?, ?> map = (Map<?, ?>) container;
+		return map.containsKey(null) || map.containsValue(null) ? Collections.unmodifiableMap(map) : Map.copyOf(map);
+	}
+
 	public static <T> T shallowClone(T object) throws ReflectiveOperationException {
-		return shallowClone(object, new DefaultCloneOptions());
+		return shallowClone(object, DEFAULT_CLONE_OPTIONS);
 	}
 
 	public static <T> T shallowClone(T object, CloneOptions options) throws ReflectiveOperationException {
 		if (object == null) return null;
 
 		Class<?> clazz = object.getClass();
-		if (options.isReassignable(clazz)) {
+		if (ClassPlan.isReassignable(clazz, options)) {
 			return object;
 		}
 
 		if (clazz.isArray()) {
 			int length = Array.getLength(object);
 			Object clone = Array.newInstance(clazz.getComponentType(), length);
-			for (int i = 0; i < length; i++) {
-				Array.set(clone, i, Array.get(object, i));
-			}
+			System.arraycopy(object, 0, clone, 0, length);
 			return (T) clone;
 		}
 
-		Object outer = getOuterInstance(object);
-		ClassContext<?> classContext = (ClassContext<?>) analyze(clazz).intern();
-		Object clone = classContext.newInstance(outer);
-		for (Field field : classContext.getFieldTypes().keySet()) {
-			if (options.isIgnoredField(classContext.fields.get(field.getName()))) {
+		// immutable collections and maps can be shared, as neither the original nor the clone can be modified
+		if (isImmutableCollection(clazz)) {
+			return object;
+		}
+		// the collection behind an unmodifiable view may still be modified, so the view is copied
+		if (isUnmodifiableContainer(clazz)) {
+			return (T) copyUnmodifiableView(object, object);
+		}
+
+		// EnumSets and EnumMaps have no constructor to create them empty
+		if (object instanceof EnumSet<?> enumSet) {
+			return (T) enumSet.clone();
+		}
+		if (clazz == EnumMap.class) {
+			return (T) ((EnumMap<?, ?>) object).clone();
+		}
+
+		ClassPlan plan = ClassPlan.of(clazz);
+		Object clone = plan.classContext.newInstance(plan.outerInstanceField == null ? null : plan.outerInstanceField.get(object));
+		for (FieldPlan fieldPlan : plan.fields(clazz, options)) {
+			if (fieldPlan.kind != Kind.REFERENCE) {
+				fieldPlan.copyPrimitive(object, clone);
 				continue;
 			}
-			field.set(clone, field.get(object));
+			plan.classContext.setFieldValue(fieldPlan.field, clone, plan.classContext.getFieldValue(fieldPlan.field, object));
 		}
 
 		if (object instanceof Collection<?> collection) {
@@ -277,18 +530,284 @@ public class ClassUtil {
 	}
 
 	public static <T> T deepClone(T object) throws ReflectiveOperationException {
-		return deepClone(object, new DefaultCloneOptions(), new IdentityHashMap<>());
+		return deepCloneRoot(object, DEFAULT_CLONE_OPTIONS);
 	}
 
 	public static <T> T deepClone(T object, CloneOptions options) throws ReflectiveOperationException {
-		return deepClone(object, options, new IdentityHashMap<>());
+		return deepCloneRoot(object, options);
+	}
+
+	public static <T> T deepCopyInto(T source, T target) throws ReflectiveOperationException {
+		return deepCopyInto(source, target, DEFAULT_CLONE_OPTIONS);
+	}
+
+	/**
+	 * Deep copy the source graph onto the existing target graph, returning the copy: the target itself if it is of the same class as the source and can be changed in place, otherwise a deepClone of the source.
+	 * Nested objects, arrays, lists and map values of the target are reused when they are of the same class (and length, for arrays) as in the source,
+	 * unless they are immutable (see {@link ClassContext#isReusable()}), and fields and items which are already equal are not written,
+	 * so that refreshing a target from a source of the same shape does not allocate beyond the source's changes. Objects shared in the target are only reused for one source object.
+	 * The items of other collections, such as sets, and the keys of maps cannot be changed in place, so they are matched with deeply equal target items instead, and only the unmatched ones are cloned.
+	 */
+	public static <T> T deepCopyInto(T source, T target, CloneOptions options) throws ReflectiveOperationException {
+		return (T) deepCopyInto(source, target, options, new IdentityHashMap<>(), Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	private static Object deepCopyInto(Object source, Object target, CloneOptions options, IdentityHashMap<Object, Object> copies, Set<Object> targets) throws ReflectiveOperationException {
+		if (source == null) return null;
+
+		Class<?> clazz = source.getClass();
+		if (ClassPlan.isReassignable(clazz, options)) {
+			return source.equals(target) ? target : source;
+		}
+
+		if (copies.containsKey(source)) {
+			return copies.get(source);
+		}
+
+		if (target == null || target.getClass() != clazz || targets.contains(target) || isUnmodifiableContainer(clazz)) {
+			return deepClone(source, options, copies);
+		}
+
+		if (clazz.isArray()) {
+			int length = Array.getLength(source);
+			if (length != Array.getLength(target)) {
+				return deepClone(source, options, copies);
+			}
+			copies.put(source, target);
+			targets.add(target);
+			if (clazz.getComponentType().isPrimitive()) {
+				System.arraycopy(source, 0, target, 0, length);
+				return target;
+			}
+			Object[] sourceItems = (Object[]) source;
+			Object[] targetItems = (Object[]) target;
+			for (int i = 0; i < length; i++) {
+				Object copy = deepCopyInto(sourceItems[i], targetItems[i], options, copies, targets);
+				if (copy != targetItems[i]) {
+					targetItems[i] = copy;
+				}
+			}
+			return target;
+		}
+
+		ClassPlan plan = ClassPlan.of(clazz);
+		// immutable targets may be shared with other graphs, so they are replaced
+		if (!plan.classContext.isReusable()) {
+			return deepClone(source, options, copies);
+		}
+		if (plan.outerInstanceField != null) {
+			// the outer instance cannot be reassigned, so the target is only reused if its outer instance is
+			Object targetOuter = plan.outerInstanceField.get(target);
+			if (deepCopyInto(plan.outerInstanceField.get(source), targetOuter, options, copies, targets) != targetOuter) {
+				return deepClone(source, options, copies);
+			}
+		}
+
+		copies.put(source, target);
+		targets.add(target);
+		for (FieldPlan fieldPlan : plan.fields(clazz, options)) {
+			if (fieldPlan.kind != Kind.REFERENCE) {
+				fieldPlan.copyPrimitive(source, target);
+				continue;
+			}
+			Object current = plan.classContext.getFieldValue(fieldPlan.field, target);
+			Object copy = deepCopyInto(plan.classContext.getFieldValue(fieldPlan.field, source), current, options, copies, targets);
+			if (copy != current) {
+				plan.classContext.setFieldValue(fieldPlan.field, target, copy);
+			}
+		}
+
+		if (source instanceof List<?> list) {
+			ListIterator<Object> targetItems = ((List<Object>) target).listIterator();
+			for (Object item : list) {
+				if (targetItems.hasNext()) {
+					Object current = targetItems.next();
+					Object copy = deepCopyInto(item, current, options, copies, targets);
+					if (copy != current) {
+						targetItems.set(copy);
+					}
+				} else {
+					targetItems.add(deepClone(item, options, copies));
+				}
+			}
+			while (targetItems.hasNext()) {
+				targetItems.next();
+				targetItems.remove();
+			}
+		} else if (source instanceof Collection<?> collection) {
+			// items of other collections cannot be updated in place, as their position may depend on their content
+			Collection<Object> targetCollection = (Collection<Object>) target;
+			Map<Integer, List<Object>> candidates = matchCandidates(targetCollection, options);
+			List<Object> items = new ArrayList<>(collection.size());
+			for (Object item : collection) {
+				items.add(copyItem(item, candidates, options, copies, targets));
+			}
+			if (!hasSameItems(targetCollection, items, source instanceof Set, options)) {
+				targetCollection.clear();
+				targetCollection.addAll(items);
+			}
+		}
+		if (source instanceof Map<?, ?> map) {
+			Map<Object, Object> targetMap = (Map<Object, Object>) target;
+			Map<Integer, List<Object>> candidates = matchCandidates(targetMap.keySet(), options);
+			List<Object> keys = new ArrayList<>(map.size());
+			for (Object key : map.keySet()) {
+				keys.add(copyItem(key, candidates, options, copies, targets));
+			}
+			Set<Object> matchedKeys = Collections.newSetFromMap(new IdentityHashMap<>());
+			matchedKeys.addAll(keys);
+			targetMap.keySet().removeIf(key -> !matchedKeys.contains(key) && !((key == null || ClassPlan.isReassignable(key.getClass(), options)) && map.containsKey(key)));
+			int i = 0;
+			for (Object value : map.values()) {
+				Object key = keys.get(i++);
+				Object current = targetMap.get(key);
+				Object copy = deepCopyInto(value, current, options, copies, targets);
+				if (copy != current || current == null && !targetMap.containsKey(key)) {
+					targetMap.put(key, copy);
+				}
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * The target items, or map keys, which are not reassignable, by deep hash code, to be matched by copyItem.
+	 */
+	private static Map<Integer, List<Object>> matchCandidates(Collection<?> targetItems, CloneOptions options) throws ReflectiveOperationException {
+		Map<Integer, List<Object>> candidates = new HashMap<>();
+		for (Object item : targetItems) {
+			if (item != null && !ClassPlan.isReassignable(item.getClass(), options)) {
+				candidates.computeIfAbsent(deepHashCode(item, options), hash -> new ArrayList<>(1)).add(item);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * The copy of an item of a collection, or of a map key, which cannot be updated in place: reassignable items themselves, the copy already made of a shared item,
+	 * a deeply equal target item not reused for another source object yet, or else a deepClone. A matched target item is refreshed in place, which only records it as the copy of the source item.
+	 */
+	private static Object copyItem(Object item, Map<Integer, List<Object>> candidates, CloneOptions options, IdentityHashMap<Object, Object> copies, Set<Object> targets) throws ReflectiveOperationException {
+		if (item == null || ClassPlan.isReassignable(item.getClass(), options)) {
+			return item;
+		}
+		if (copies.containsKey(item)) {
+			return copies.get(item);
+		}
+		List<Object> matches = candidates.get(deepHashCode(item, options));
+		if (matches != null) {
+			for (Iterator<Object> iterator = matches.iterator(); iterator.hasNext();) {
+				Object match = iterator.next();
+				if (!targets.contains(match) && deepEquals(item, match, options)) {
+					iterator.remove();
+					if (isReusableInstance(match)) {
+						return deepCopyInto(item, match, options, copies, targets);
+					}
+					copies.put(item, match);
+					targets.add(match);
+					return match;
+				}
+			}
+		}
+		return deepClone(item, options, copies);
+	}
+
+	/**
+	 * Whether the target collection already holds the given copied items: the same items for sets, reassignable ones being equal, and the same items in the same order otherwise.
+	 */
+	private static boolean hasSameItems(Collection<?> target, List<Object> items, boolean set, CloneOptions options) {
+		if (target.size() != items.size()) {
+			return false;
+		}
+		if (set) {
+			Set<Object> targetItems = null;
+			for (Object item : items) {
+				if (item == null || ClassPlan.isReassignable(item.getClass(), options)) {
+					if (!target.contains(item)) {
+						return false;
+					}
+					continue;
+				}
+				if (targetItems == null) {
+					targetItems = Collections.newSetFromMap(new IdentityHashMap<>());
+					targetItems.addAll(target);
+				}
+				if (!targetItems.contains(item)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		Iterator<?> targetItems = target.iterator();
+		for (Object item : items) {
+			Object targetItem = targetItems.next();
+			if (item != targetItem && !(item != null && ClassPlan.isReassignable(item.getClass(), options) && item.equals(targetItem))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static boolean deepEquals(Object a, Object b) throws ReflectiveOperationException {
+		return deepEquals(a, b, DEFAULT_CLONE_OPTIONS);
+	}
+
+	/**
+	 * Compare two object graphs structurally, walking them as deepClone would copy them with the given CloneOptions.
+	 * Cycles and shared references are supported, and the graphs are equal only if their references are shared the same way. See {@link #diff(Object, Object, CloneOptions)}.
+	 */
+	public static boolean deepEquals(Object a, Object b, CloneOptions options) throws ReflectiveOperationException {
+		return DeepComparison.deepEquals(a, b, options);
+	}
+
+	public static int deepHashCode(Object object) throws ReflectiveOperationException {
+		return deepHashCode(object, DEFAULT_CLONE_OPTIONS);
+	}
+
+	/**
+	 * A hash code of the object graph consistent with {@link #deepEquals(Object, Object, CloneOptions)} with the same CloneOptions.
+	 */
+	public static int deepHashCode(Object object, CloneOptions options) throws ReflectiveOperationException {
+		return DeepComparison.deepHashCode(object, options);
+	}
+
+	public static List<String> diff(Object a, Object b) throws ReflectiveOperationException {
+		return diff(a, b, DEFAULT_CLONE_OPTIONS);
+	}
+
+	/**
+	 * The paths at which two object graphs differ, in the path notation given to ValueGenerators (e.g. "a.b[0][:value]"), with "" for the roots.
+	 * The list is empty if and only if the graphs are deepEquals. Items of sets and maps are compared regardless of order, and reported at their index in a.
+	 */
+	public static List<String> diff(Object a, Object b, CloneOptions options) throws ReflectiveOperationException {
+		return DeepComparison.diff(a, b, options);
+	}
+
+	private static <T> T deepCloneRoot(T object, CloneOptions options) throws ReflectiveOperationException {
+		if (object == null) return null;
+
+		DeepCloneEvent event = new DeepCloneEvent();
+		IdentityHashMap<Object, Object> clones = new IdentityHashMap<>();
+		long allocatedBytes = event.isEnabled() ? JfrEvents.allocatedBytes() : 0;
+		long start = System.nanoTime();
+		event.begin();
+		T clone = deepClone(object, options, clones);
+		event.end();
+		Metrics.INSTANCE.recordClone(object.getClass(), System.nanoTime() - start, clones.size());
+		if (event.shouldCommit()) {
+			event.rootClass = object.getClass();
+			event.nodeCount = clones.size();
+			event.allocatedBytes = JfrEvents.allocatedBytes() - allocatedBytes;
+			event.commit();
+		}
+		return clone;
 	}
 
 	private static <T> T deepClone(T object, CloneOptions options, IdentityHashMap<Object, Object> clones) throws ReflectiveOperationException {
 		if (object == null) return null;
 
 		Class<?> clazz = object.getClass();
-		if (options.isReassignable(clazz)) {
+		if (ClassPlan.isReassignable(clazz, options)) {
 			return object;
 		}
 
@@ -306,20 +825,56 @@ public class ClassUtil {
 			return (T) clone;
 		}
 
-		Object outer = getOuterInstance(object);
+		// EnumSets and EnumMaps have no constructor to create them empty, so they are copied and then their values are cloned
+		if (object instanceof EnumSet<?> enumSet) {
+			Object clone = enumSet.clone();
+			clones.put(object, clone);
+			return (T) clone;
+		}
+		if (clazz == EnumMap.class) {
+			EnumMap<?, Object> clone = ((EnumMap<?, Object>) object).clone();
+			clones.put(object, clone);
+			for (Map.Entry<?, Object> entry : clone.entrySet()) {
+				entry.setValue(deepClone(entry.getValue(), options, clones));
+			}
+			return (T) clone;
+		}
+
+		// unmodifiable collections and maps cannot be filled, so their items are cloned into a new one
+		if (isUnmodifiableContainer(clazz)) {
+			Object items;
+			if (object instanceof Collection<?> collection) {
+				Collection<Object> itemClones = object instanceof Set ? new LinkedHashSet<>() : new ArrayList<>();
+				for (Object item : collection) {
+					itemClones.add(deepClone(item, options, clones));
+				}
+				items = itemClones;
+			} else {
+				Map<Object, Object> entryClones = new LinkedHashMap<>();
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+					entryClones.put(deepClone(entry.getKey(), options, clones), deepClone(entry.getValue(), options, clones));
+				}
+				items = entryClones;
+			}
+			Object clone = isImmutableCollection(clazz) ? toUnmodifiable(items) : copyUnmodifiableView(object, items);
+			clones.put(object, clone);
+			return (T) clone;
+		}
+
+		ClassPlan plan = ClassPlan.of(clazz);
 		Object outerClone = null;
-		if (outer != null) {
-			outerClone = deepClone(outer, options,clones);
+		if (plan.outerInstanceField != null) {
+			outerClone = deepClone(plan.outerInstanceField.get(object), options, clones);
 		}
 
-		ClassContext<?> classContext = (ClassContext<?>) analyze(clazz).intern();
-		Object clone = classContext.newInstance(outerClone);
+		Object clone = plan.classContext.newInstance(outerClone);
 		clones.put(object, clone);
-		for (Field field : classContext.getFieldTypes().keySet()) {
-			if (options.isIgnoredField(classContext.fields.get(field.getName()))) {
+		for (FieldPlan fieldPlan : plan.fields(clazz, options)) {
+			if (fieldPlan.kind != Kind.REFERENCE) {
+				fieldPlan.copyPrimitive(object, clone);
 				continue;
 			}
-			field.set(clone, deepClone(field.get(object), options, clones));
+			plan.classContext.setFieldValue(fieldPlan.field, clone, deepClone(plan.classContext.getFieldValue(fieldPlan.field, object), options, clones));
 		}
 
 		if (object instanceof Collection<?> collection) {
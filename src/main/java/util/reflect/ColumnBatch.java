@@ -0,0 +1,195 @@
+package util.reflect;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Randomly generated rows of a ClassContext stored as columns, one per field, instead of as instances.
+ * Primitive fields are stored in primitive arrays, String fields are dictionary-encoded, and other fields are stored as Object arrays.
+ * Values are generated a column at a time, with the same ValueGenerator decisions as randomInstance makes for the fields of a root instance,
+ * each row at the path of the field followed by its row index (e.g. "name[3]"), so that path based ValueGenerators such as SeekableValueGenerator give each row its own values.
+ * int, long and double columns are filled in bulk with {@link ValueGenerator#generateItems(ContextualType, String, Object)} when the ValueGenerator supports it, without boxing,
+ * given the path of the field as for the items of a primitive collection.
+ *
+ * Created by {@link ClassContext#randomColumns(ValueGenerator, int)}, and can be refilled with {@link ClassContext#randomColumns(ValueGenerator, ColumnBatch)} without allocating new columns.
+ */
+public class ColumnBatch {
+
+	@Getter
+	private final ClassContext<?> type;
+	@Getter
+	private final int size;
+	private final Map<String, Column> columns = new LinkedHashMap<>();
+
+	/**
+	 * The values of a field for all the rows of a ColumnBatch.
+	 */
+	public static class Column {
+		@Getter
+		private final Field field;
+		@Getter
+		private final ContextualType<?> type;
+		// a primitive array for primitive fields, int[] of dictionary ids for String fields, or Object[]
+		private final Object values;
+		private final List<String> dictionary;
+		private final Map<String, Integer> dictionaryIds;
+
+		private Column(Field field, ContextualType<?> type, int size) {
+			this.field = field;
+			this.type = type;
+			Class<?> clazz = type.getActualClass();
+			if (clazz.isPrimitive()) {
+				values = Array.newInstance(clazz, size);
+			} else if (clazz == String.class) {
+				values = new int[size];
+			} else {
+				values = new Object[size];
+			}
+			dictionary = clazz == String.class ? new ArrayList<>() : null;
+			dictionaryIds = clazz == String.class ? new HashMap<>() : null;
+		}
+
+		public String getName() {
+			return field.getName();
+		}
+
+		public boolean isDictionaryEncoded() {
+			return dictionary != null;
+		}
+
+		public int[] getInts() {
+			return (int[]) values;
+		}
+
+		public long[] getLongs() {
+			return (long[]) values;
+		}
+
+		public double[] getDoubles() {
+			return (double[]) values;
+		}
+
+		public float[] getFloats() {
+			return (float[]) values;
+		}
+
+		public boolean[] getBooleans() {
+			return (boolean[]) values;
+		}
+
+		public Object[] getObjects() {
+			return (Object[]) values;
+		}
+
+		/**
+		 * The dictionary ids of a String column, indexing into {@link #getDictionary()}, with -1 for null.
+		 */
+		public int[] getDictionaryIds() {
+			return (int[]) values;
+		}
+
+		/**
+		 * The distinct values of a String column, in order of first appearance, or an empty list for other columns.
+		 */
+		public List<String> getDictionary() {
+			return dictionary == null ? List.of() : Collections.unmodifiableList(dictionary);
+		}
+
+		/**
+		 * The value of the given row, boxed or decoded from the dictionary.
+		 */
+		public Object get(int row) {
+			if (dictionary != null) {
+				int id = ((int[]) values)[row];
+				return id < 0 ? null : dictionary.get(id);
+			}
+			return Array.get(values, row);
+		}
+
+		private void fill(ValueGenerator generator, RandomInstanceState state, int size) throws ReflectiveOperationException {
+			if (type.getActualClass().isPrimitive() && generator.generateItems(type, state.joinPath(), values)) {
+				return;
+			}
+			if (dictionary != null) {
+				dictionary.clear();
+				dictionaryIds.clear();
+				int[] ids = (int[]) values;
+				for (int row = 0; row < size; row++) {
+					String value = (String) randomValue(generator, state, row);
+					ids[row] = value == null ? -1 : dictionaryIds.computeIfAbsent(value, v -> {
+						dictionary.add(v);
+						return dictionary.size() - 1;
+					});
+				}
+			} else if (values instanceof Object[] objects) {
+				for (int row = 0; row < size; row++) {
+					objects[row] = randomValue(generator, state, row);
+				}
+			} else {
+				for (int row = 0; row < size; row++) {
+					Array.set(values, row, randomValue(generator, state, row));
+				}
+			}
+		}
+
+		private Object randomValue(ValueGenerator generator, RandomInstanceState state, int row) throws ReflectiveOperationException {
+			state.pushIndexPath(row);
+			Object value = type.randomInstance(generator, state);
+			state.popPath();
+			return value;
+		}
+	}
+
+	ColumnBatch(ClassContext<?> type, ValueGenerator generator, int size) {
+		this.type = type;
+		this.size = size;
+		for (Map.Entry<Field, ContextualType<?>> entry : type.getFieldTypes().entrySet()) {
+			Field field = entry.getKey();
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			Field exposedField = type.fields.get(field.getName());
+			if (generator.isIgnoredField(type, "", exposedField)) {
+				continue;
+			}
+			columns.put(field.getName(), new Column(exposedField, entry.getValue(), size));
+		}
+	}
+
+	public Collection<Column> getColumns() {
+		return Collections.unmodifiableCollection(columns.values());
+	}
+
+	/**
+	 * Get the Column of the field with the given name, or null if the field is static or ignored by the ValueGenerator.
+	 */
+	public Column getColumn(String fieldName) {
+		return columns.get(fieldName);
+	}
+
+	/**
+	 * Generate the values of every column, each row generated as the fields of a root instance would be.
+	 */
+	void fill(ValueGenerator generator) throws ReflectiveOperationException {
+		RandomInstanceState state = new RandomInstanceState();
+		state.setPathUsed(generator.isPathUsed());
+		// the batch stands for the instances being generated, for recursion into the row type
+		state.pushInstance(type, this);
+		for (Column column : columns.values()) {
+			state.pushFieldPath(column.getName());
+			column.fill(generator, state, size);
+			state.popPath();
+		}
+		state.popInstance(type);
+	}
+}
@@ -2,7 +2,9 @@ package util.reflect;
 
 import java.lang.reflect.Type;
 
+import util.reflect.JfrEvents.RandomInstanceEvent;
 import util.reflect.ValueGenerator.DefaultValueGenerator;
+import util.reflect.ValueGenerator.SeekableValueGenerator;
 
 public abstract class ContextualType<T> {
 
@@ -11,18 +13,84 @@ public abstract class ContextualType<T> {
 	public abstract Type getResolvedType();
 
 	public T randomInstance() throws ReflectiveOperationException {
-		return randomInstance(new DefaultValueGenerator(), new RandomInstanceState());
+		return randomRootInstance(new DefaultValueGenerator(), new RandomInstanceState());
 	}
 
 	/**
 	 * Create a new instance with randomly initialized fields (or items for ArrayContext).
 	 */
 	public T randomInstance(ValueGenerator generator) throws ReflectiveOperationException {
-		return randomInstance(generator, new RandomInstanceState());
+		return randomRootInstance(generator, new RandomInstanceState());
+	}
+
+	/**
+	 * Create a new instance with randomly initialized fields (or items for ArrayContext), with the size of the generated graph limited by the given GenerationBudget.
+	 */
+	public T randomInstance(ValueGenerator generator, GenerationBudget budget) throws ReflectiveOperationException {
+		RandomInstanceState state = new RandomInstanceState();
+		state.setBudget(budget);
+		return randomRootInstance(generator, state);
+	}
+
+	/**
+	 * Create the index-th random instance of the given seed, independently of any other instance of the same seed. See {@link SeekableValueGenerator}.
+	 */
+	public T randomInstance(long seed, long index) throws ReflectiveOperationException {
+		return randomRootInstance(new SeekableValueGenerator(seed, index), new RandomInstanceState());
+	}
+
+	/**
+	 * Randomize the given target in place, overwriting its fields (or items for ArrayContext) with the values randomInstance would generate.
+	 * Nested objects, arrays, collections and maps of the target are randomized in place as well, and new instances are only created where the target has nulls or values of other classes, or array lengths differ.
+	 * Immutable objects and unmodifiable collections and maps are never modified, new instances are created in their place (see {@link ClassContext#isReusable()}).
+	 * Final fields are never reassigned: their objects, arrays, collections and maps are randomized or refilled in place, and their primitives and immutable values are left alone.
+	 * The randomized instance is returned, which is a new instance if the target itself cannot be reused.
+	 */
+	public T randomizeInto(T target, ValueGenerator generator) throws ReflectiveOperationException {
+		RandomInstanceState state = new RandomInstanceState();
+		state.setReuse(target);
+		return randomRootInstance(generator, state);
+	}
+
+	private T randomRootInstance(ValueGenerator generator, RandomInstanceState state) throws ReflectiveOperationException {
+		state.setPathUsed(generator.isPathUsed());
+		RandomInstanceEvent event = new RandomInstanceEvent();
+		long allocatedBytes = event.isEnabled() ? JfrEvents.allocatedBytes() : 0;
+		long start = System.nanoTime();
+		event.begin();
+		T instance = randomInstance(generator, state);
+		event.end();
+		Metrics.INSTANCE.recordGeneration(this, System.nanoTime() - start, state.getNodeCount());
+		if (event.shouldCommit()) {
+			event.rootType = toString();
+			event.nodeCount = state.getNodeCount();
+			event.allocatedBytes = JfrEvents.allocatedBytes() - allocatedBytes;
+			event.commit();
+		}
+		return instance;
 	}
 
 	protected abstract T randomInstance(ValueGenerator generator, RandomInstanceState state) throws ReflectiveOperationException;
 
+	/**
+	 * Generate random values as GenerationVisitor events instead of creating instances, following the same ValueGenerator decisions as randomInstance.
+	 * Since no instance is created, the recursed Object List given to {@link ValueGenerator#onRecursion} contains the paths of the enclosing objects being generated,
+	 * and the enclosing instance of an inner class is not generated.
+	 */
+	public void generate(ValueGenerator generator, GenerationVisitor visitor) throws ReflectiveOperationException {
+		generate(generator, visitor, new RandomInstanceState());
+	}
+
+	// Returned by the CurrentInstanceContext when generating into a GenerationVisitor, in place of an instance
+	static final Object GENERATED = new Object();
+
+	abstract void generate(ValueGenerator generator, GenerationVisitor visitor, RandomInstanceState state) throws ReflectiveOperationException;
+
+	/**
+	 * Whether this is the ContextualType interned for its Type.
+	 */
+	abstract boolean isInterned();
+
 	/**
 	 * Cache the given ContextualType. Analyzing the same Class/Type will return the same ContextualType instance from the cache.
 	 */
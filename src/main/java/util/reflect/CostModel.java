@@ -0,0 +1,179 @@
+package util.reflect;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import util.reflect.ValueGenerator.DefaultValueGenerator;
+
+/**
+ * Estimate the size of the instance graph randomInstance would generate for a ContextualType with a ValueGenerator, without generating it.
+ * The type graph is walked following getImplementationClass and isIgnoredField of the ValueGenerator, with getExpectedCollectionSize giving the expected size of each collection, map and array.
+ * A type recursing into itself is counted as cut off, as DefaultValueGenerator.onRecursion does. Item positions are reported with [*] in the paths.
+ *
+ * Nodes and bytes are counted as in {@link GenerationBudget}: every value is a node, including primitives, values of classes known to be immutable (see {@link ClassUtil#isKnownImmutable(Class)},
+ * e.g. boxed primitives, Strings and enums) and cut off recursions, while bytes are only counted for the objects, arrays, collections and maps created by randomInstance.
+ * Known immutable values are assumed to be generated directly by the ValueGenerator and count no bytes, and primitives and cut off recursions are not reported as paths.
+ * Collections stored in primitive arrays (see {@link DefaultValueGenerator#PRIMITIVE_COLLECTIONS}) are counted with a reference per item, as if generateItems were not supported.
+ */
+@Getter
+public class CostModel {
+
+	private static final int DEFAULT_SAMPLES = 16;
+
+	@Getter(AccessLevel.NONE)
+	private final ValueGenerator generator;
+	@Getter(AccessLevel.NONE)
+	private final int samples;
+	@Getter(AccessLevel.NONE)
+	private final List<ContextualType<?>> stack = new ArrayList<>();
+	@Getter(AccessLevel.NONE)
+	private final Map<String, PathCost> pathCosts = new LinkedHashMap<>();
+
+	private double expectedNodes;
+	private double expectedBytes;
+
+	/**
+	 * The expected cost of the values generated at a path, in total over all the instances generated at that path.
+	 */
+	@Getter
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	public static class PathCost {
+		private final String path;
+		private final ContextualType<?> type;
+		private double expectedCount;
+		// shallow bytes of the values at this path only
+		private double expectedBytes;
+		// nodes and shallow bytes of the values at this path and everything under them
+		private double expectedSubtreeNodes;
+		private double expectedSubtreeBytes;
+
+		@Override
+		public String toString() {
+			return String.format("%s (%s): count %.1f, bytes %.0f, subtree nodes %.1f, subtree bytes %.0f", path, type, expectedCount, expectedBytes, expectedSubtreeNodes, expectedSubtreeBytes);
+		}
+	}
+
+	private CostModel(ValueGenerator generator, int samples) {
+		this.generator = generator;
+		this.samples = samples;
+	}
+
+	public static CostModel estimate(ContextualType<?> type, ValueGenerator generator) {
+		return estimate(type, generator, DEFAULT_SAMPLES);
+	}
+
+	/**
+	 * Estimate with the given number of samples given to {@link ValueGenerator#getExpectedCollectionSize(ContextualType, String, int)} for each collection, map or array.
+	 * A DefaultValueGenerator (or SeekableValueGenerator) not overriding getCollectionSize returns the mean collection size without drawing from its Random,
+	 * so the instances generated afterwards are the same as without the estimate, and the generator may be used by other threads meanwhile.
+	 * Other ValueGenerator implementations sample getCollectionSize, which advances whatever state it uses.
+	 */
+	public static CostModel estimate(ContextualType<?> type, ValueGenerator generator, int samples) {
+		CostModel model = new CostModel(generator, samples);
+		double[] total = model.walk(type, "", "", 1);
+		model.expectedNodes = total[0];
+		model.expectedBytes = total[1];
+		return model;
+	}
+
+	/**
+	 * The expected costs of all the paths, with the paths under a path listed before it.
+	 */
+	public List<PathCost> getPathCosts() {
+		return List.copyOf(pathCosts.values());
+	}
+
+	/**
+	 * The given number of paths with the most expected shallow bytes.
+	 */
+	public List<PathCost> getHottestPaths(int limit) {
+		return pathCosts.values().stream()
+				.sorted(Comparator.comparingDouble(PathCost::getExpectedBytes).reversed())
+				.limit(limit)
+				.toList();
+	}
+
+	/**
+	 * Walk the given type generated count times at the path, returning the total expected nodes and shallow bytes of the subtrees.
+	 * The hookPath is the path with [0] in place of [*], as given to the ValueGenerator.
+	 */
+	private double[] walk(ContextualType<?> type, String path, String hookPath, double count) {
+		if (count == 0) {
+			return new double[2];
+		}
+		if (type.getActualClass().isPrimitive()) {
+			return new double[] { count, 0 };
+		}
+		if (type instanceof ArrayContext<?> arrayType) {
+			double length = generator.getExpectedCollectionSize(arrayType, hookPath, samples);
+			double bytes = ClassUtil.alignObjectSize(ClassUtil.ARRAY_HEADER_SIZE + (long) Math.ceil(length * ClassUtil.getSlotSize(arrayType.getActualClass().getComponentType())));
+			double[] items = walk(arrayType.getComponentType(), path + "[*]", hookPath + "[0]", count * length);
+			return record(type, path, count, bytes, items);
+		}
+
+		ClassContext<?> classType = (ClassContext<?>) type;
+		Class<?> implementationClass = generator.getImplementationClass(classType, hookPath);
+		if (implementationClass != null && implementationClass != classType.getActualClass()) {
+			classType = classType.toImplementation(implementationClass);
+		}
+		if (ClassUtil.isKnownImmutable(classType.getActualClass())) {
+			return record(classType, path, count, 0, new double[2]);
+		}
+		if (stack.contains(classType)) {
+			return new double[] { count, 0 };
+		}
+
+		stack.add(classType);
+		double bytes = classType.getShallowSize();
+		double[] children = new double[2];
+		if (Collection.class.isAssignableFrom(classType.getActualClass())) {
+			double size = generator.getExpectedCollectionSize(classType, hookPath, samples);
+			bytes += size * ClassUtil.REFERENCE_SIZE;
+			add(children, walk(classType.getItemType(), path + "[*]", hookPath + "[0]", count * size));
+		}
+		if (Map.class.isAssignableFrom(classType.getActualClass())) {
+			double size = generator.getExpectedCollectionSize(classType, hookPath, samples);
+			bytes += size * ClassUtil.MAP_ENTRY_SIZE;
+			add(children, walk(classType.getMapKeyType(), path + "[*][:key]", hookPath + "[0][:key]", count * size));
+			add(children, walk(classType.getMapValueType(), path + "[*][:value]", hookPath + "[0][:value]", count * size));
+		}
+		for (Map.Entry<Field, ContextualType<?>> entry : classType.getFieldTypes().entrySet()) {
+			Field field = entry.getKey();
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			if (generator.isIgnoredField(classType, hookPath, classType.fields.get(field.getName()))) {
+				continue;
+			}
+			String fieldPath = path.isEmpty() ? field.getName() : path + "." + field.getName();
+			String fieldHookPath = hookPath.isEmpty() ? field.getName() : hookPath + "." + field.getName();
+			add(children, walk(entry.getValue(), fieldPath, fieldHookPath, count));
+		}
+		stack.remove(stack.size() - 1);
+		return record(classType, path, count, bytes, children);
+	}
+
+	private double[] record(ContextualType<?> type, String path, double count, double bytes, double[] children) {
+		PathCost pathCost = pathCosts.computeIfAbsent(path, p -> new PathCost(p, type));
+		double[] subtree = { count + children[0], count * bytes + children[1] };
+		pathCost.expectedCount += count;
+		pathCost.expectedBytes += count * bytes;
+		pathCost.expectedSubtreeNodes += subtree[0];
+		pathCost.expectedSubtreeBytes += subtree[1];
+		return subtree;
+	}
+
+	private static void add(double[] total, double[] value) {
+		total[0] += value[0];
+		total[1] += value[1];
+	}
+}
@@ -0,0 +1,348 @@
+package util.reflect;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import util.reflect.ClassPlan.FieldPlan;
+import util.reflect.ClassPlan.Kind;
+import util.reflect.ClassUtil.CloneOptions;
+
+/**
+ * Deep comparison and hashing of object graphs, for {@link ClassUtil#deepEquals(Object, Object, CloneOptions)}, {@link ClassUtil#deepHashCode(Object, CloneOptions)} and {@link ClassUtil#diff(Object, Object, CloneOptions)}.
+ * Objects are walked as deepClone copies them: reassignable classes are compared with equals (when they implement it), and otherwise the outer instance, the fields not ignored by the CloneOptions, and the items of arrays, collections and maps are compared.
+ *
+ * The fields of each class are compiled once into a ClassPlan, with primitive fields read with the primitive Field getters instead of boxing.
+ * Objects of the two graphs are paired on first comparison, so that cycles terminate and shared references must be shared the same way in both graphs.
+ * Sets and maps are compared regardless of iteration order, by matching items with equal deep hash codes, and are equal only if every item has an equal counterpart.
+ */
+@SuppressWarnings("unchecked")
+class DeepComparison {
+
+	private static final Object NO_MATCH = new Object();
+
+	private final CloneOptions options;
+	// the differing paths, or null when only deciding equality
+	private final List<String> diffs;
+	// the fields of each ClassPlan not ignored by options which are not cacheable
+	private final Map<Class<?>, FieldPlan[]> fieldPlans;
+	private final IdentityHashMap<Object, Object> pairs = new IdentityHashMap<>();
+	private final IdentityHashMap<Object, Object> reversePairs = new IdentityHashMap<>();
+	private final IdentityHashMap<Object, Object> ancestors = new IdentityHashMap<>();
+
+	private DeepComparison(CloneOptions options, List<String> diffs, Map<Class<?>, FieldPlan[]> fieldPlans) {
+		this.options = options;
+		this.diffs = diffs;
+		this.fieldPlans = fieldPlans;
+	}
+
+	static boolean deepEquals(Object a, Object b, CloneOptions options) throws ReflectiveOperationException {
+		return new DeepComparison(options, null, new HashMap<>()).compare(a, b, "");
+	}
+
+	static int deepHashCode(Object object, CloneOptions options) throws ReflectiveOperationException {
+		return new DeepComparison(options, null, new HashMap<>()).hash(object);
+	}
+
+	static List<String> diff(Object a, Object b, CloneOptions options) throws ReflectiveOperationException {
+		List<String> diffs = new ArrayList<>();
+		new DeepComparison(options, diffs, new HashMap<>()).compare(a, b, "");
+		return diffs;
+	}
+
+	private DeepComparison subComparison() {
+		return new DeepComparison(options, null, fieldPlans);
+	}
+
+	private FieldPlan[] fieldPlans(ClassPlan plan, Class<?> clazz) {
+		if (options.isCacheable()) {
+			return plan.fields(clazz, options);
+		}
+		FieldPlan[] theFieldPlans = fieldPlans.get(clazz);
+		if (theFieldPlans == null) {
+			theFieldPlans = plan.fields(clazz, options);
+			fieldPlans.put(clazz, theFieldPlans);
+		}
+		return theFieldPlans;
+	}
+
+	/**
+	 * Reassignable classes are compared with equals, unless they inherit the identity equals of Object (e.g. deeply immutable classes without an equals method).
+	 */
+	private boolean isComparedWithEquals(Class<?> clazz) {
+		return ClassPlan.isReassignable(clazz, options) && (ClassUtil.isKnownImmutable(clazz) || ClassPlan.hasValueEquals(clazz));
+	}
+
+	private boolean differ(String path) {
+		if (diffs != null) {
+			diffs.add(path);
+		}
+		return false;
+	}
+
+	private static String fieldPath(String path, String name) {
+		return path.isEmpty() ? name : path + "." + name;
+	}
+
+	/**
+	 * Compare a and b at the path, returning whether they are deeply equal. When collecting diffs, the comparison goes on after the first difference.
+	 */
+	private boolean compare(Object a, Object b, String path) throws ReflectiveOperationException {
+		if (a == b) {
+			return true;
+		}
+		if (a == null || b == null || a.getClass() != b.getClass()) {
+			return differ(path);
+		}
+		Class<?> clazz = a.getClass();
+		if (isComparedWithEquals(clazz)) {
+			return a.equals(b) || differ(path);
+		}
+		Object paired = pairs.get(a);
+		if (paired != null || reversePairs.containsKey(b)) {
+			return paired == b || differ(path);
+		}
+		pairs.put(a, b);
+		reversePairs.put(b, a);
+
+		if (clazz.isArray()) {
+			return compareArrays(a, b, path);
+		}
+
+		ClassPlan plan = ClassPlan.of(clazz);
+		boolean equal = true;
+		if (plan.outerInstanceField != null && !compare(plan.outerInstanceField.get(a), plan.outerInstanceField.get(b), path)) {
+			if (diffs == null) return false;
+			equal = false;
+		}
+		for (FieldPlan fieldPlan : fieldPlans(plan, clazz)) {
+			boolean fieldEqual;
+			if (fieldPlan.kind != Kind.REFERENCE) {
+				fieldEqual = fieldPlan.primitiveEquals(a, b) || differ(fieldPath(path, fieldPlan.field.getName()));
+			} else {
+				fieldEqual = compare(plan.classContext.getFieldValue(fieldPlan.field, a), plan.classContext.getFieldValue(fieldPlan.field, b), fieldPath(path, fieldPlan.field.getName()));
+			}
+			if (!fieldEqual) {
+				if (diffs == null) return false;
+				equal = false;
+			}
+		}
+
+		if (a instanceof Set<?> set) {
+			equal &= compareSets(set, (Set<?>) b, path);
+		} else if (a instanceof Collection<?> collection) {
+			equal &= compareInOrder(collection, (Collection<?>) b, path);
+		}
+		if (a instanceof Map<?, ?> map) {
+			equal &= compareMaps(map, (Map<?, ?>) b, path);
+		}
+		return equal;
+	}
+
+	private boolean compareArrays(Object a, Object b, String path) throws ReflectiveOperationException {
+		int length = Array.getLength(a);
+		if (length != Array.getLength(b)) {
+			return differ(path);
+		}
+		Class<?> componentType = a.getClass().getComponentType();
+		if (componentType.isPrimitive()) {
+			if (primitiveArrayEquals(a, b)) {
+				return true;
+			}
+			if (diffs != null) {
+				for (int i = 0; i < length; i++) {
+					if (!Array.get(a, i).equals(Array.get(b, i))) {
+						differ(path + "[" + i + "]");
+					}
+				}
+			}
+			return false;
+		}
+		Object[] aItems = (Object[]) a;
+		Object[] bItems = (Object[]) b;
+		boolean equal = true;
+		for (int i = 0; i < length; i++) {
+			if (!compare(aItems[i], bItems[i], path + "[" + i + "]")) {
+				if (diffs == null) return false;
+				equal = false;
+			}
+		}
+		return equal;
+	}
+
+	private static boolean primitiveArrayEquals(Object a, Object b) {
+		if (a instanceof int[] ints) return Arrays.equals(ints, (int[]) b);
+		if (a instanceof long[] longs) return Arrays.equals(longs, (long[]) b);
+		if (a instanceof double[] doubles) return Arrays.equals(doubles, (double[]) b);
+		if (a instanceof float[] floats) return Arrays.equals(floats, (float[]) b);
+		if (a instanceof boolean[] booleans) return Arrays.equals(booleans, (boolean[]) b);
+		if (a instanceof byte[] bytes) return Arrays.equals(bytes, (byte[]) b);
+		if (a instanceof char[] chars) return Arrays.equals(chars, (char[]) b);
+		return Arrays.equals((short[]) a, (short[]) b);
+	}
+
+	private static int primitiveArrayHashCode(Object array) {
+		if (array instanceof int[] ints) return Arrays.hashCode(ints);
+		if (array instanceof long[] longs) return Arrays.hashCode(longs);
+		if (array instanceof double[] doubles) return Arrays.hashCode(doubles);
+		if (array instanceof float[] floats) return Arrays.hashCode(floats);
+		if (array instanceof boolean[] booleans) return Arrays.hashCode(booleans);
+		if (array instanceof byte[] bytes) return Arrays.hashCode(bytes);
+		if (array instanceof char[] chars) return Arrays.hashCode(chars);
+		return Arrays.hashCode((short[]) array);
+	}
+
+	private boolean compareInOrder(Collection<?> a, Collection<?> b, String path) throws ReflectiveOperationException {
+		if (a.size() != b.size()) {
+			return differ(path);
+		}
+		Iterator<?> bIterator = b.iterator();
+		boolean equal = true;
+		int i = 0;
+		for (Object item : a) {
+			if (!compare(item, bIterator.next(), path + "[" + i + "]")) {
+				if (diffs == null) return false;
+				equal = false;
+			}
+			i++;
+		}
+		return equal;
+	}
+
+	/**
+	 * Index the objects by deep hash code, to find the counterparts of the items of the other set or map.
+	 */
+	private <V> Map<Integer, List<V>> index(Collection<V> objects, boolean entryKeys) throws ReflectiveOperationException {
+		Map<Integer, List<V>> index = new HashMap<>();
+		for (V object : objects) {
+			Object hashed = entryKeys ? ((Map.Entry<?, ?>) object).getKey() : object;
+			index.computeIfAbsent(subComparison().hash(hashed), h -> new ArrayList<>()).add(object);
+		}
+		return index;
+	}
+
+	/**
+	 * Remove and return the object of the candidates deeply equal to the given one, compared without the pairs of this comparison, or NO_MATCH.
+	 */
+	private Object match(Object object, Map<Integer, ? extends List<?>> index, boolean entryKeys) throws ReflectiveOperationException {
+		List<?> candidates = index.get(subComparison().hash(object));
+		if (candidates != null) {
+			for (Iterator<?> iterator = candidates.iterator(); iterator.hasNext();) {
+				Object candidate = iterator.next();
+				if (subComparison().compare(object, entryKeys ? ((Map.Entry<?, ?>) candidate).getKey() : candidate, "")) {
+					iterator.remove();
+					return candidate;
+				}
+			}
+		}
+		return NO_MATCH;
+	}
+
+	private boolean compareSets(Set<?> a, Set<?> b, String path) throws ReflectiveOperationException {
+		if (a.size() != b.size()) {
+			return differ(path);
+		}
+		Map<Integer, List<Object>> index = index((Collection<Object>) b, false);
+		boolean equal = true;
+		int i = 0;
+		for (Object item : a) {
+			Object counterpart = match(item, index, false);
+			// compare the matched items again to pair them, as they may still differ in how they share references with the rest of the graph
+			if (counterpart == NO_MATCH ? !differ(path + "[" + i + "]") : !compare(item, counterpart, path + "[" + i + "]")) {
+				if (diffs == null) return false;
+				equal = false;
+			}
+			i++;
+		}
+		return equal;
+	}
+
+	private boolean compareMaps(Map<?, ?> a, Map<?, ?> b, String path) throws ReflectiveOperationException {
+		if (a.size() != b.size()) {
+			return differ(path);
+		}
+		Map<Integer, List<Map.Entry<?, ?>>> index = index((Collection<Map.Entry<?, ?>>) (Collection<?>) b.entrySet(), true);
+		boolean equal = true;
+		int i = 0;
+		for (Map.Entry<?, ?> entry : a.entrySet()) {
+			String itemPath = path + "[" + i++ + "]";
+			Object counterpart = match(entry.getKey(), index, true);
+			boolean entryEqual;
+			if (counterpart == NO_MATCH) {
+				entryEqual = differ(itemPath + "[:key]");
+			} else {
+				Map.Entry<?, ?> counterpartEntry = (Map.Entry<?, ?>) counterpart;
+				entryEqual = compare(entry.getKey(), counterpartEntry.getKey(), itemPath + "[:key]");
+				if (entryEqual || diffs != null) {
+					entryEqual &= compare(entry.getValue(), counterpartEntry.getValue(), itemPath + "[:value]");
+				}
+			}
+			if (!entryEqual) {
+				if (diffs == null) return false;
+				equal = false;
+			}
+		}
+		return equal;
+	}
+
+	/**
+	 * A hash code consistent with compare: cycles back to an object being hashed contribute a constant, and sets and maps are hashed regardless of iteration order.
+	 * Classes contribute the hash code of their name rather than their identity hash code, so that the hash code is the same across JVMs.
+	 */
+	private int hash(Object object) throws ReflectiveOperationException {
+		if (object == null) {
+			return 0;
+		}
+		Class<?> clazz = object.getClass();
+		if (isComparedWithEquals(clazz)) {
+			return object.hashCode();
+		}
+		if (clazz.isArray() && clazz.getComponentType().isPrimitive()) {
+			return 31 * clazz.getName().hashCode() + primitiveArrayHashCode(object);
+		}
+		if (ancestors.put(object, object) != null) {
+			return 1;
+		}
+		int hash = clazz.getName().hashCode();
+		if (clazz.isArray()) {
+			for (Object item : (Object[]) object) {
+				hash = 31 * hash + hash(item);
+			}
+		} else {
+			ClassPlan plan = ClassPlan.of(clazz);
+			if (plan.outerInstanceField != null) {
+				hash = 31 * hash + hash(plan.outerInstanceField.get(object));
+			}
+			for (FieldPlan fieldPlan : fieldPlans(plan, clazz)) {
+				hash = 31 * hash + (fieldPlan.kind != Kind.REFERENCE ? fieldPlan.primitiveHashCode(object) : hash(plan.classContext.getFieldValue(fieldPlan.field, object)));
+			}
+			if (object instanceof Set<?> set) {
+				int itemsHash = 0;
+				for (Object item : set) {
+					itemsHash += hash(item);
+				}
+				hash = 31 * hash + itemsHash;
+			} else if (object instanceof Collection<?> collection) {
+				for (Object item : collection) {
+					hash = 31 * hash + hash(item);
+				}
+			}
+			if (object instanceof Map<?, ?> map) {
+				int entriesHash = 0;
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					entriesHash += hash(entry.getKey()) ^ hash(entry.getValue());
+				}
+				hash = 31 * hash + entriesHash;
+			}
+		}
+		ancestors.remove(object);
+		return hash;
+	}
+}
@@ -0,0 +1,112 @@
+package util.reflect;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A List of Doubles stored in a double[], without a boxed Double per item. Null items are not accepted.
+ * Selected by DefaultValueGenerator for List&lt;Double&gt; when PRIMITIVE_COLLECTIONS is on.
+ */
+public class DoubleArrayList extends AbstractList<Double> implements RandomAccess, PrimitiveCollection {
+
+	private static final double[] EMPTY = {};
+
+	private double[] items;
+	private int size;
+
+	public DoubleArrayList() {
+		items = EMPTY;
+	}
+
+	public DoubleArrayList(int capacity) {
+		items = capacity == 0 ? EMPTY : new double[capacity];
+	}
+
+	public double getDouble(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	public double setDouble(int index, double item) {
+		Objects.checkIndex(index, size);
+		double previous = items[index];
+		items[index] = item;
+		return previous;
+	}
+
+	public void addDouble(double item) {
+		addDouble(size, item);
+	}
+
+	public void addDouble(int index, double item) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) {
+			items = Arrays.copyOf(items, Math.max(size + (size >> 1), 4));
+		}
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = item;
+		size++;
+		modCount++;
+	}
+
+	public double removeDouble(int index) {
+		Objects.checkIndex(index, size);
+		double previous = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return previous;
+	}
+
+	/**
+	 * A copy of the items.
+	 */
+	public double[] toDoubleArray() {
+		return Arrays.copyOf(items, size);
+	}
+
+	@Override
+	public Double get(int index) {
+		return getDouble(index);
+	}
+
+	@Override
+	public Double set(int index, Double item) {
+		return setDouble(index, item);
+	}
+
+	@Override
+	public void add(int index, Double item) {
+		addDouble(index, item);
+	}
+
+	@Override
+	public Double remove(int index) {
+		return removeDouble(index);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Class<?> getPrimitiveClass() {
+		return double.class;
+	}
+
+	@Override
+	public void setItems(Object items) {
+		this.items = (double[]) items;
+		size = this.items.length;
+		modCount++;
+	}
+}
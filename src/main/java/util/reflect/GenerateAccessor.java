@@ -0,0 +1,17 @@
+package util.reflect;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a class for which the optional annotation processor (the processor module) should generate a {@link ClassAccessor} at compile time.
+ * The annotated class must be a non-private top-level or static nested class with a non-private no-arg constructor.
+ * Only its non-private, non-final instance fields are covered by the generated accessor, other fields are still accessed through reflection.
+ * The analysis of the class (field discovery and generic type resolution) is not generated, it stays reflective, see {@link ClassAccessor}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateAccessor {
+}
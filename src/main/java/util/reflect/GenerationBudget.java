@@ -0,0 +1,30 @@
+package util.reflect;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Limits on the instance graph generated by one randomInstance call: the number of nodes (values generated), the approximate shallow bytes of the objects, arrays and collections created,
+ * and the depth of the path. As the remaining budget runs low, collection and array sizes are scaled down, and once it is exhausted,
+ * {@link ValueGenerator#onRecursion} is called before creating any further object, which returns null in DefaultValueGenerator.
+ */
+@Getter
+@RequiredArgsConstructor
+public class GenerationBudget {
+
+	private final long maxNodes;
+	private final long maxBytes;
+	private final int maxDepth;
+
+	public static GenerationBudget ofNodes(long maxNodes) {
+		return new GenerationBudget(maxNodes, Long.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	public static GenerationBudget ofBytes(long maxBytes) {
+		return new GenerationBudget(Long.MAX_VALUE, maxBytes, Integer.MAX_VALUE);
+	}
+
+	public static GenerationBudget ofDepth(int maxDepth) {
+		return new GenerationBudget(Long.MAX_VALUE, Long.MAX_VALUE, maxDepth);
+	}
+}
@@ -0,0 +1,35 @@
+package util.reflect;
+
+import java.lang.reflect.Field;
+
+/**
+ * Receives randomly generated values as a stream of events from {@link ContextualType#generate(ValueGenerator, GenerationVisitor)}, in the order the fields, items and entries are generated.
+ * No instance is created for objects, collections and maps, so the memory used is bounded by the depth of the generated structure instead of its size.
+ *
+ * An object is reported as beginObject, then field followed by the events of its value for every generated field, then endObject.
+ * A collection or an array is reported as beginCollection, the events of its items, then endCollection.
+ * A map is reported as beginMap, then mapKey, the events of the key, mapValue, the events of the value for every entry, then endMap.
+ * Any other value returned by the ValueGenerator (including nulls) is reported as a single value event.
+ */
+public interface GenerationVisitor {
+
+	void beginObject(ContextualType<?> type, String path);
+
+	void field(Field field);
+
+	void endObject();
+
+	void beginCollection(ContextualType<?> type, String path, int size);
+
+	void endCollection();
+
+	void beginMap(ContextualType<?> type, String path, int size);
+
+	void mapKey();
+
+	void mapValue();
+
+	void endMap();
+
+	void value(ContextualType<?> type, String path, Object value);
+}
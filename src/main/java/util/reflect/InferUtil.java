@@ -10,6 +10,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.Stream;
 
+import util.reflect.JfrEvents.InferEvent;
+
 @SuppressWarnings("unchecked")
 public class InferUtil {
 
@@ -59,6 +61,10 @@ public class InferUtil {
 			}
 			return;
 		} else if (typeToInfer instanceof TypeVariable<?> theTypeToInfer) {
+			if (variance != Variance.CONTRAVARIANT && actualType.equals(map.get(theTypeToInfer))) {
+				// already inferred, with its bounds checked or being checked, as for E extends Enum<E>
+				return;
+			}
 			if (variance != Variance.CONTRAVARIANT) {
 				if (actualType instanceof Class<?> actual && actualClass.isPrimitive()) {
 					actualClass = ClassUtil.box(actualClass);
@@ -74,7 +80,7 @@ public class InferUtil {
 				}
 				if (bound instanceof ParameterizedType theBound) {
 					try {
-						Map<TypeVariable<?>, Type> boundClassMap = infer(boundClass, ClassContext.ofParameterizedType((ParameterizedType) actualType));
+						Map<TypeVariable<?>, Type> boundClassMap = inferClass(boundClass, ClassContext.ofType(actualType));
 						ParameterizedType inferredBoundType = (ParameterizedType) TypeResolver.newResolvedClassType(boundClass, boundClassMap);
 						infer(map, theBound.getActualTypeArguments(), inferredBoundType.getActualTypeArguments());
 						infer(map, theBound.getOwnerType(), inferredBoundType.getOwnerType(), Variance.INVARIANT);
@@ -95,7 +101,7 @@ public class InferUtil {
 				} else {
 					try {
 						Class<?> rawClass = ClassUtil.toBasicClass(theTypeToInfer.getRawType());
-						Map<TypeVariable<?>, Type> rawClassMap = infer(rawClass, ClassContext.ofParameterizedType(theActualType));
+						Map<TypeVariable<?>, Type> rawClassMap = inferClass(rawClass, ClassContext.ofParameterizedType(theActualType));
 						ParameterizedType inferredRawType = (ParameterizedType) TypeResolver.newResolvedClassType(rawClass, rawClassMap);
 						infer(map, theTypeToInfer.getActualTypeArguments(), inferredRawType.getActualTypeArguments());
 						infer(map, theTypeToInfer.getOwnerType(), inferredRawType.getOwnerType(), Variance.INVARIANT);
@@ -162,7 +168,7 @@ public class InferUtil {
 			ClassContext<?> declaredOuterClassContext = declaredClassContext.getOuterClass();
 			while (outerClass != null && declaredOuterClassContext != null) {
 				if (declaredOuterClassContext.getActualClass().isAssignableFrom(outerClass)) {
-					inferredTypes.putAll(infer(outerClass, declaredOuterClassContext));
+					inferredTypes.putAll(inferClass(outerClass, declaredOuterClassContext));
 					declaredOuterClassContext = declaredOuterClassContext.getOuterClass();
 				}
 				outerClass = outerClass.getEnclosingClass();
@@ -179,6 +185,27 @@ public class InferUtil {
 	 * Some invalid declaration will also be caught and a TypeInferenceException will be thrown but it is not exhaustive and should not be used to verify the declaration.
 	 */
 	public static <S, T> Map<TypeVariable<?>, Type> infer(Class<T> targetClass, ClassContext<S> declaredClassContext) throws TypeInferenceException {
+		InferEvent event = new InferEvent();
+		event.begin();
+		boolean success = false;
+		try {
+			Map<TypeVariable<?>, Type> result = inferClass(targetClass, declaredClassContext);
+			success = true;
+			return result;
+		} finally {
+			if (!success) {
+				Metrics.INSTANCE.recordInferenceFailure();
+			}
+			if (event.shouldCommit()) {
+				event.targetClass = targetClass;
+				event.declaredType = declaredClassContext.toString();
+				event.success = success;
+				event.commit();
+			}
+		}
+	}
+
+	private static <S, T> Map<TypeVariable<?>, Type> inferClass(Class<T> targetClass, ClassContext<S> declaredClassContext) throws TypeInferenceException {
 		Class<S> declaredClass = declaredClassContext.getActualClass();
 		if (targetClass == declaredClass) {
 			return declaredClassContext.getContext();
@@ -187,7 +214,7 @@ public class InferUtil {
 			if (targetClass.isInterface()) {
 				return declaredClassContext.getInterface(targetClass).getContext();
 			} else {
-				return infer(targetClass, declaredClassContext.getSuperclass());
+				return inferClass(targetClass, declaredClassContext.getSuperclass());
 			}
 		}
 		if (declaredClass.isAssignableFrom(targetClass)) {
@@ -196,8 +223,8 @@ public class InferUtil {
 					if (superInterface == declaredClass) {
 						return inferDirectSubclass(targetClass, declaredClassContext);
 					} else if (declaredClass.isAssignableFrom(superInterface)) {
-						ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superInterface, infer(superInterface, declaredClassContext)));
-						return infer(targetClass, superclassContext);
+						ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superInterface, inferClass(superInterface, declaredClassContext)));
+						return inferClass(targetClass, superclassContext);
 					}
 					throw new TypeInferenceException();
 				}
@@ -207,20 +234,20 @@ public class InferUtil {
 						if (superInterface == declaredClass) {
 							return inferDirectSubclass(targetClass, declaredClassContext);
 						} else if (declaredClass.isAssignableFrom(superInterface)) {
-							ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superInterface, infer(superInterface, declaredClassContext)));
-							return infer(targetClass, superclassContext);
+							ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superInterface, inferClass(superInterface, declaredClassContext)));
+							return inferClass(targetClass, superclassContext);
 						}
 					}
 					Class<?> superclass = targetClass.getSuperclass();
-					ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superclass, infer(superclass, declaredClassContext)));
-					return infer(targetClass, superclassContext);
+					ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superclass, inferClass(superclass, declaredClassContext)));
+					return inferClass(targetClass, superclassContext);
 				} else {
 					Class<?> superclass = targetClass.getSuperclass();
 					if (superclass == declaredClass) {
 						return inferDirectSubclass(targetClass, declaredClassContext);
 					} else {
-						ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superclass, infer(superclass, declaredClassContext)));
-						return infer(targetClass, superclassContext);
+						ClassContext<?> superclassContext = ClassContext.ofType(TypeResolver.newResolvedClassType(superclass, inferClass(superclass, declaredClassContext)));
+						return inferClass(targetClass, superclassContext);
 					}
 				}
 			}
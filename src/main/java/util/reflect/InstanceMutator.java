@@ -0,0 +1,430 @@
+package util.reflect;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import util.reflect.ValueGenerator.DefaultValueGenerator;
+
+/**
+ * Mutate an existing instance graph by regenerating a few randomly picked fields, list/array items or map values in place, see {@link ClassContext#mutator(Object, ValueGenerator)}.
+ * The graph is walked once when the InstanceMutator is created, and the slots found and their subtree sizes are kept across mutate calls:
+ * only the regenerated subtrees are walked again, so a call costs the regenerated subtrees and the depth of the picked slots rather than the size of the graph.
+ * Changes made to the graph other than through this InstanceMutator are detected when a slot on the way to a picked one no longer holds the value it was walked with, and the graph is then walked again.
+ *
+ * Objects which must not be changed in place (see {@link ClassContext#isReusable()}), i.e. unmodifiable collections and maps or immutable objects which may be shared with other graphs,
+ * are not walked into, they can only be regenerated as a whole through the slot holding them. Final fields are never reassigned, but the objects, arrays, collections and maps they hold are walked into.
+ */
+@SuppressWarnings("unchecked")
+public class InstanceMutator<T> {
+
+	@Getter
+	private final T instance;
+	private final ValueGenerator generator;
+	private final Slot root;
+	// the objects walked into, each one only once
+	private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	InstanceMutator(T instance, ContextualType<T> type, ValueGenerator generator) throws ReflectiveOperationException {
+		this.instance = instance;
+		this.generator = generator;
+		this.root = new Slot(null, type, null, null, null, -1, null, true);
+		root.value = instance;
+		expand(root);
+	}
+
+	/**
+	 * A place in the instance graph holding a value which can be regenerated, i.e. a field, a list or array item, or a map value.
+	 */
+	@RequiredArgsConstructor
+	private static class Slot {
+		private final Slot parent;
+		// the declared ContextualType of the value held
+		private final ContextualType<?> type;
+		// the object, list, array or map holding the value
+		private final Object container;
+		private final ClassContext<?> containerType;
+		private final Field field;
+		private final int index;
+		private final Object mapKey;
+		// the root and final fields, which are walked into but not regenerated
+		private final boolean fixed;
+
+		private Object value;
+		// the ContextualType of the value as it was generated, null for leaf values
+		private ContextualType<?> valueType;
+		private List<Slot> children;
+		// the position of this slot in the children of its parent
+		private int childIndex;
+		// the weights of the children as a Fenwick tree (indexed from 1), so that picking and updating cost the log of the number of children
+		private long[] childWeights;
+		// the number of slots in the subtree of this slot, including itself
+		private long size;
+		// the total pick weight of the subtree, each slot not fixed weighing its size
+		private long weight;
+		private boolean mutated;
+
+		/**
+		 * The value currently held by the container, which is not the walked value if the graph was changed other than by the InstanceMutator.
+		 */
+		private Object currentValue() throws IllegalAccessException {
+			if (field != null) {
+				return containerType.getFieldValue(field, container);
+			}
+			if (container instanceof List<?> list) {
+				return index < list.size() ? list.get(index) : null;
+			}
+			if (container instanceof Map<?, ?> map) {
+				return map.get(mapKey);
+			}
+			return index < Array.getLength(container) ? Array.get(container, index) : null;
+		}
+
+		/**
+		 * Whether the container still has the position of this slot.
+		 */
+		private boolean isPresent() {
+			if (field != null) {
+				return true;
+			}
+			if (container instanceof List<?> list) {
+				return index < list.size();
+			}
+			if (container instanceof Map<?, ?> map) {
+				return map.containsKey(mapKey);
+			}
+			return index < Array.getLength(container);
+		}
+	}
+
+	/**
+	 * Regenerate up to the given number of randomly picked slots, each picked with probability proportional to the size of its subtree, and return the number regenerated.
+	 * The picks are drawn from the Random of the ValueGenerator if it is a DefaultValueGenerator.
+	 */
+	public int mutate(int mutations) throws ReflectiveOperationException {
+		return mutate(mutations, generator instanceof DefaultValueGenerator theGenerator ? theGenerator.random : new Random());
+	}
+
+	/**
+	 * Same as {@link #mutate(int)}, with the picks drawn from the given Random.
+	 */
+	public int mutate(int mutations, Random random) throws ReflectiveOperationException {
+		List<Slot> mutatedSlots = new ArrayList<>();
+		try {
+			for (int i = 0; i < mutations && root.weight > 0; i++) {
+				Slot slot = pick((long) (random.nextDouble() * root.weight));
+				if (slot == null || isMutated(slot)) {
+					continue;
+				}
+				if (!isCurrent(slot)) {
+					// the graph was changed since it was walked
+					rewalk();
+					slot = pick((long) (random.nextDouble() * root.weight));
+					if (slot == null) {
+						break;
+					}
+				}
+				regenerate(slot);
+				slot.mutated = true;
+				mutatedSlots.add(slot);
+			}
+		} finally {
+			for (Slot slot : mutatedSlots) {
+				slot.mutated = false;
+			}
+		}
+		return mutatedSlots.size();
+	}
+
+	/**
+	 * The slot at the given position in [0, total weight), descending from the root through the subtree weights.
+	 */
+	private Slot pick(long position) {
+		Slot slot = root;
+		while (slot != null) {
+			long own = slot.fixed ? 0 : slot.size;
+			if (position < own) {
+				return slot;
+			}
+			position -= own;
+			if (slot.children.isEmpty()) {
+				return null;
+			}
+			// the first child whose cumulative weight exceeds the position
+			long[] weights = slot.childWeights;
+			int index = 0;
+			for (int step = Integer.highestOneBit(slot.children.size()); step > 0; step >>= 1) {
+				if (index + step < weights.length && weights[index + step] <= position) {
+					index += step;
+					position -= weights[index];
+				}
+			}
+			slot = index < slot.children.size() ? slot.children.get(index) : null;
+		}
+		return null;
+	}
+
+	private static void updateChildWeight(Slot slot, int childIndex, long delta) {
+		long[] weights = slot.childWeights;
+		for (int i = childIndex + 1; i < weights.length; i += i & -i) {
+			weights[i] += delta;
+		}
+	}
+
+	private static boolean isMutated(Slot slot) {
+		for (Slot current = slot; current != null; current = current.parent) {
+			if (current.mutated) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the slot is still in its container, and the containers on the way to it still hold the objects they were walked with.
+	 */
+	private boolean isCurrent(Slot slot) throws IllegalAccessException {
+		if (!slot.isPresent()) {
+			return false;
+		}
+		for (Slot current = slot.parent; current != root; current = current.parent) {
+			if (current.currentValue() != current.value) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rewalk() throws ReflectiveOperationException {
+		visited.clear();
+		root.children = null;
+		root.valueType = null;
+		expand(root);
+	}
+
+	/**
+	 * Walk the value of the given slot breadth first, creating the slots of its subtree, and compute their sizes and weights.
+	 * Objects already walked elsewhere in the graph are not walked again.
+	 */
+	private void expand(Slot top) throws ReflectiveOperationException {
+		List<Slot> walked = new ArrayList<>();
+		ArrayDeque<Slot> queue = new ArrayDeque<>();
+		queue.add(top);
+		while (!queue.isEmpty()) {
+			Slot slot = queue.poll();
+			walked.add(slot);
+			slot.children = Collections.emptyList();
+			Object value = slot.value;
+			if (value == null || slot.type.getActualClass().isPrimitive() || !visited.add(value)) {
+				continue;
+			}
+			ContextualType<?> valueType = runtimeType(slot.type, value);
+			slot.valueType = valueType;
+			List<Slot> children = new ArrayList<>();
+
+			if (valueType instanceof ArrayContext<?> arrayType) {
+				int length = Array.getLength(value);
+				for (int i = 0; i < length; i++) {
+					children.add(new Slot(slot, arrayType.getComponentType(), value, null, null, i, null, false));
+				}
+			} else {
+				ClassContext<?> classType = (ClassContext<?>) valueType;
+				if (!classType.isReusable()) {
+					visited.remove(value);
+					slot.valueType = null;
+					continue;
+				}
+				if (value instanceof List<?> list) {
+					ContextualType<?> itemType = classType.getItemType();
+					for (int i = 0; i < list.size(); i++) {
+						children.add(new Slot(slot, itemType, value, classType, null, i, null, false));
+					}
+				} else if (value instanceof Map<?, ?> map) {
+					// keys are not walked into, since changing them in place would break the map
+					ContextualType<?> valueItemType = classType.getMapValueType();
+					int i = 0;
+					for (Object key : map.keySet()) {
+						children.add(new Slot(slot, valueItemType, value, classType, null, i, key, false));
+						i++;
+					}
+				} else if (!(value instanceof Collection<?>)) {
+					String path = generator.isPathIndependent() ? "" : path(slot);
+					for (Map.Entry<Field, ContextualType<?>> entry : classType.getFieldTypes().entrySet()) {
+						Field field = entry.getKey();
+						if (Modifier.isStatic(field.getModifiers())) {
+							continue;
+						}
+						if (generator.isIgnoredField(classType, path, classType.fields.get(field.getName()))) {
+							continue;
+						}
+						boolean fixed = Modifier.isFinal(field.getModifiers());
+						// final fields holding primitives or immutable values have nothing to regenerate or walk into
+						if (fixed && (field.getType().isPrimitive() || !isWalkable(classType.getFieldValue(field, value)))) {
+							continue;
+						}
+						children.add(new Slot(slot, entry.getValue(), value, classType, field, -1, null, fixed));
+					}
+				}
+			}
+			for (int i = 0; i < children.size(); i++) {
+				Slot child = children.get(i);
+				child.childIndex = i;
+				child.value = child.currentValue();
+				queue.add(child);
+			}
+			slot.children = children;
+		}
+
+		// slots are walked parents first, so the sizes and weights are summed up in reverse
+		for (int i = walked.size() - 1; i >= 0; i--) {
+			Slot slot = walked.get(i);
+			long size = 1;
+			long weight = 0;
+			long[] weights = new long[slot.children.size() + 1];
+			for (int j = 1; j < weights.length; j++) {
+				Slot child = slot.children.get(j - 1);
+				size += child.size;
+				weight += child.weight;
+				weights[j] += child.weight;
+				int parent = j + (j & -j);
+				if (parent < weights.length) {
+					weights[parent] += weights[j];
+				}
+			}
+			slot.childWeights = weights;
+			slot.size = size;
+			slot.weight = weight + (slot.fixed ? 0 : size);
+		}
+	}
+
+	private static boolean isWalkable(Object value) {
+		return value != null && ClassUtil.isReusableInstance(value);
+	}
+
+	/**
+	 * Forget the objects walked in the subtree of the given slot, so that they can be walked again where they are still referenced.
+	 */
+	private void forget(Slot top) {
+		ArrayDeque<Slot> queue = new ArrayDeque<>();
+		queue.add(top);
+		while (!queue.isEmpty()) {
+			Slot slot = queue.poll();
+			if (slot.valueType != null) {
+				visited.remove(slot.value);
+			}
+			queue.addAll(slot.children);
+		}
+	}
+
+	/**
+	 * The path of the value of the given slot, as given to the ValueGenerator.
+	 */
+	private static String path(Slot slot) {
+		List<Slot> ancestors = ancestors(slot);
+		StringBuilder path = new StringBuilder();
+		for (int i = 1; i < ancestors.size(); i++) {
+			Slot current = ancestors.get(i);
+			if (current.field != null) {
+				path.append(path.length() == 0 ? "" : ".").append(current.field.getName());
+			} else {
+				path.append('[').append(current.index).append(']');
+				if (current.container instanceof Map<?, ?>) {
+					path.append("[:value]");
+				}
+			}
+		}
+		return path.toString();
+	}
+
+	/**
+	 * The slots from the root to the given one.
+	 */
+	private static List<Slot> ancestors(Slot slot) {
+		List<Slot> ancestors = new ArrayList<>();
+		for (Slot current = slot; current != null; current = current.parent) {
+			ancestors.add(current);
+		}
+		Collections.reverse(ancestors);
+		return ancestors;
+	}
+
+	/**
+	 * The ContextualType randomInstance would have used to generate the given value of the declared type.
+	 */
+	private static ContextualType<?> runtimeType(ContextualType<?> declaredType, Object value) {
+		Class<?> clazz = value.getClass();
+		if (declaredType.getActualClass() == clazz || declaredType.getActualClass().isPrimitive()) {
+			return declaredType;
+		}
+		if (declaredType instanceof ClassContext<?> classType && declaredType.getActualClass().isAssignableFrom(clazz) && !clazz.isArray()) {
+			return classType.toImplementation(clazz);
+		}
+		return ClassUtil.analyze(clazz);
+	}
+
+	private void regenerate(Slot slot) throws ReflectiveOperationException {
+		List<Slot> ancestors = ancestors(slot);
+
+		// rebuild the path and the enclosing instances, as if the slot was reached by randomInstance
+		RandomInstanceState state = new RandomInstanceState();
+		state.setPathUsed(generator.isPathUsed());
+		for (int i = 1; i < ancestors.size(); i++) {
+			Slot parent = ancestors.get(i - 1);
+			Slot current = ancestors.get(i);
+			if (parent.valueType instanceof ClassContext<?>) {
+				state.pushInstance(parent.valueType, parent.value);
+			}
+			if (current.field != null) {
+				state.pushFieldPath(current.field.getName());
+			} else {
+				state.pushIndexPath(current.index);
+				if (current.container instanceof Map<?, ?>) {
+					state.pushMapValuePath();
+				}
+			}
+		}
+
+		Object value;
+		if (slot.field != null) {
+			value = slot.type.randomInstance(generator, state);
+			slot.containerType.setFieldValue(slot.field, slot.container, value);
+		} else if (slot.container instanceof List<?> list) {
+			value = slot.type.randomInstance(generator, state);
+			((List<Object>) list).set(slot.index, value);
+		} else if (slot.container instanceof Map<?, ?> map) {
+			value = slot.type.randomInstance(generator, state);
+			((Map<Object, Object>) map).put(slot.mapKey, value);
+		} else {
+			ArrayContext<?> arrayType = (ArrayContext<?>) slot.parent.valueType;
+			value = arrayType.randomItem(generator, state, null);
+			Array.set(slot.container, slot.index, value);
+		}
+
+		// walk the new subtree only, and carry the changes of its size and weight up to the root
+		long size = slot.size;
+		long weight = slot.weight;
+		forget(slot);
+		slot.value = value;
+		slot.valueType = null;
+		expand(slot);
+		long sizeDelta = slot.size - size;
+		long weightDelta = slot.weight - weight;
+		for (Slot child = slot, parent = slot.parent; parent != null; child = parent, parent = parent.parent) {
+			updateChildWeight(parent, child.childIndex, weightDelta);
+			parent.size += sizeDelta;
+			weightDelta += parent.fixed ? 0 : sizeDelta;
+			parent.weight += weightDelta;
+		}
+	}
+}
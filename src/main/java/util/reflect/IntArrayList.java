@@ -0,0 +1,112 @@
+package util.reflect;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A List of Integers stored in an int[], without a boxed Integer per item. Null items are not accepted.
+ * Selected by DefaultValueGenerator for List&lt;Integer&gt; when PRIMITIVE_COLLECTIONS is on.
+ */
+public class IntArrayList extends AbstractList<Integer> implements RandomAccess, PrimitiveCollection {
+
+	private static final int[] EMPTY = {};
+
+	private int[] items;
+	private int size;
+
+	public IntArrayList() {
+		items = EMPTY;
+	}
+
+	public IntArrayList(int capacity) {
+		items = capacity == 0 ? EMPTY : new int[capacity];
+	}
+
+	public int getInt(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	public int setInt(int index, int item) {
+		Objects.checkIndex(index, size);
+		int previous = items[index];
+		items[index] = item;
+		return previous;
+	}
+
+	public void addInt(int item) {
+		addInt(size, item);
+	}
+
+	public void addInt(int index, int item) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) {
+			items = Arrays.copyOf(items, Math.max(size + (size >> 1), 4));
+		}
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = item;
+		size++;
+		modCount++;
+	}
+
+	public int removeInt(int index) {
+		Objects.checkIndex(index, size);
+		int previous = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return previous;
+	}
+
+	/**
+	 * A copy of the items.
+	 */
+	public int[] toIntArray() {
+		return Arrays.copyOf(items, size);
+	}
+
+	@Override
+	public Integer get(int index) {
+		return getInt(index);
+	}
+
+	@Override
+	public Integer set(int index, Integer item) {
+		return setInt(index, item);
+	}
+
+	@Override
+	public void add(int index, Integer item) {
+		addInt(index, item);
+	}
+
+	@Override
+	public Integer remove(int index) {
+		return removeInt(index);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Class<?> getPrimitiveClass() {
+		return int.class;
+	}
+
+	@Override
+	public void setItems(Object items) {
+		this.items = (int[]) items;
+		size = this.items.length;
+		modCount++;
+	}
+}
@@ -0,0 +1,273 @@
+package util.reflect;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A Set of Integers stored in an open addressing int[] hash table with linear probing, without a boxed Integer or entry per item. Null items are not accepted.
+ * 0 marks the empty slots of the table, so the item 0 is stored as a flag instead. Removal shifts the following items of the probe sequence back, leaving no tombstones.
+ * setItems adds the given items one by one, so duplicates are dropped and the set may end up smaller than the array, as with the items generated for a boxed HashSet.
+ * Selected by DefaultValueGenerator for Set&lt;Integer&gt; when PRIMITIVE_COLLECTIONS is on.
+ */
+public class IntHashSet extends AbstractSet<Integer> implements PrimitiveCollection {
+
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int MIN_CAPACITY = 4;
+
+	private int[] table;
+	private boolean containsZero;
+	private int size;
+	// counts the structural modifications, for the iterators to fail fast on concurrent ones
+	private int modCount;
+
+	public IntHashSet() {
+		this(0);
+	}
+
+	/**
+	 * Create a set which holds the given number of items without resizing.
+	 */
+	public IntHashSet(int expectedSize) {
+		table = new int[capacity(expectedSize)];
+	}
+
+	private static int capacity(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * LOAD_FACTOR < expectedSize + 1) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private int slot(int item) {
+		int hash = item * 0x9e3779b9;
+		return (hash ^ hash >>> 16) & table.length - 1;
+	}
+
+	/**
+	 * The slot of the given non-zero item, or the empty slot where it would be inserted.
+	 */
+	private int find(int item) {
+		int slot = slot(item);
+		while (table[slot] != 0 && table[slot] != item) {
+			slot = slot + 1 & table.length - 1;
+		}
+		return slot;
+	}
+
+	public boolean containsInt(int item) {
+		return item == 0 ? containsZero : table[find(item)] != 0;
+	}
+
+	public boolean addInt(int item) {
+		if (item == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			modCount++;
+			return true;
+		}
+		int slot = find(item);
+		if (table[slot] != 0) {
+			return false;
+		}
+		table[slot] = item;
+		size++;
+		modCount++;
+		if (size > table.length * LOAD_FACTOR) {
+			rehash(table.length << 1);
+		}
+		return true;
+	}
+
+	public boolean removeInt(int item) {
+		if (item == 0) {
+			if (!containsZero) {
+				return false;
+			}
+			containsZero = false;
+			size--;
+			modCount++;
+			return true;
+		}
+		int slot = find(item);
+		if (table[slot] == 0) {
+			return false;
+		}
+		removeSlot(slot);
+		return true;
+	}
+
+	/**
+	 * Empty the given slot, moving back the following items of its probe sequence which may no longer be reachable past it.
+	 */
+	private void removeSlot(int slot) {
+		int mask = table.length - 1;
+		int hole = slot;
+		for (int next = hole + 1 & mask; table[next] != 0; next = next + 1 & mask) {
+			int home = slot(table[next]);
+			// the item can move to the hole unless its home slot lies cyclically in (hole, next]
+			if ((next - home & mask) >= (next - hole & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+		size--;
+		modCount++;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldTable = table;
+		table = new int[capacity];
+		for (int item : oldTable) {
+			if (item != 0) {
+				table[find(item)] = item;
+			}
+		}
+	}
+
+	/**
+	 * A copy of the items, in iteration order.
+	 */
+	public int[] toIntArray() {
+		int[] items = new int[size];
+		int i = 0;
+		for (IntIterator iterator = new IntIterator(); iterator.hasNext();) {
+			items[i++] = iterator.nextInt();
+		}
+		return items;
+	}
+
+	@Override
+	public boolean contains(Object item) {
+		return item instanceof Integer theItem && containsInt(theItem);
+	}
+
+	@Override
+	public boolean add(Integer item) {
+		return addInt(item);
+	}
+
+	@Override
+	public boolean remove(Object item) {
+		return item instanceof Integer theItem && removeInt(theItem);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(table, 0);
+		containsZero = false;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new IntIterator();
+	}
+
+	@Override
+	public Class<?> getPrimitiveClass() {
+		return int.class;
+	}
+
+	@Override
+	public void setItems(Object items) {
+		int[] theItems = (int[]) items;
+		table = new int[capacity(theItems.length)];
+		containsZero = false;
+		size = 0;
+		modCount++;
+		for (int item : theItems) {
+			addInt(item);
+		}
+	}
+
+	/**
+	 * Iterates the table downwards starting below an empty slot, so that the items moved back by a removal are always ones already iterated, then the item 0.
+	 * Fails with a ConcurrentModificationException once the set is modified other than through the iterator.
+	 */
+	private class IntIterator implements Iterator<Integer> {
+		private int expectedModCount = modCount;
+		private int remaining;
+		private int slot;
+		private boolean zeroPending = containsZero;
+		private int lastSlot = -1;
+		private boolean lastZero;
+
+		IntIterator() {
+			int empty = 0;
+			while (table[empty] != 0) {
+				empty++;
+			}
+			slot = empty;
+			remaining = table.length - 1;
+		}
+
+		@Override
+		public boolean hasNext() {
+			checkModCount();
+			while (remaining > 0 && table[slot - 1 & table.length - 1] == 0) {
+				slot = slot - 1 & table.length - 1;
+				remaining--;
+			}
+			return remaining > 0 || zeroPending;
+		}
+
+		int nextInt() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastZero = false;
+			if (remaining > 0) {
+				slot = slot - 1 & table.length - 1;
+				remaining--;
+				lastSlot = slot;
+				return table[slot];
+			}
+			zeroPending = false;
+			lastZero = true;
+			lastSlot = -1;
+			return 0;
+		}
+
+		@Override
+		public Integer next() {
+			return nextInt();
+		}
+
+		@Override
+		public void remove() {
+			checkModCount();
+			if (lastZero) {
+				containsZero = false;
+				size--;
+				modCount++;
+				lastZero = false;
+			} else if (lastSlot >= 0) {
+				removeSlot(lastSlot);
+				lastSlot = -1;
+			} else {
+				throw new IllegalStateException();
+			}
+			expectedModCount = modCount;
+		}
+
+		private void checkModCount() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+}
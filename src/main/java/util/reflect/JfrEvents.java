@@ -0,0 +1,113 @@
+package util.reflect;
+
+import java.lang.management.ManagementFactory;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR events emitted by this library. Event fields are only filled in when the event is going to be committed,
+ * so a disabled event costs no more than its begin/commit calls, which JFR turns into no-ops.
+ */
+final class JfrEvents {
+
+	private static final String CATEGORY = "Reflect Random Instance";
+
+	private JfrEvents() {
+	}
+
+	@Name("util.reflect.Analyze")
+	@Label("Analyze Type")
+	@Description("ClassUtil.analyze of a type, hitting the cache of interned ContextualTypes or not")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class AnalyzeEvent extends Event {
+		@Label("Type")
+		String type;
+		@Label("Cache Hit")
+		boolean cacheHit;
+	}
+
+	@Name("util.reflect.ComputeConstructor")
+	@Label("Compute Constructor")
+	@Description("Search of a usable constructor of a ClassContext")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class ComputeConstructorEvent extends Event {
+		@Label("Class")
+		Class<?> actualClass;
+		@Label("Found")
+		boolean found;
+	}
+
+	@Name("util.reflect.ComputeFields")
+	@Label("Compute Fields")
+	@Description("Resolution of the field types of a ClassContext")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class ComputeFieldsEvent extends Event {
+		@Label("Type")
+		String type;
+		@Label("Field Count")
+		int fieldCount;
+	}
+
+	@Name("util.reflect.RandomInstance")
+	@Label("Random Instance")
+	@Description("Top level randomInstance or randomizeInto call")
+	@Category(CATEGORY)
+	static class RandomInstanceEvent extends Event {
+		@Label("Root Type")
+		String rootType;
+		@Label("Node Count")
+		long nodeCount;
+		@Label("Allocated")
+		@DataAmount
+		long allocatedBytes;
+	}
+
+	@Name("util.reflect.DeepClone")
+	@Label("Deep Clone")
+	@Description("Top level ClassUtil.deepClone call")
+	@Category(CATEGORY)
+	static class DeepCloneEvent extends Event {
+		@Label("Root Class")
+		Class<?> rootClass;
+		@Label("Node Count")
+		long nodeCount;
+		@Label("Allocated")
+		@DataAmount
+		long allocatedBytes;
+	}
+
+	@Name("util.reflect.Infer")
+	@Label("Infer Type Variables")
+	@Description("InferUtil.infer of a target class from a ClassContext")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class InferEvent extends Event {
+		@Label("Target Class")
+		Class<?> targetClass;
+		@Label("Declared Type")
+		String declaredType;
+		@Label("Success")
+		boolean success;
+	}
+
+	private static class Threads {
+		private static final com.sun.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+				&& threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+	}
+
+	/**
+	 * Bytes allocated by the current thread so far, or 0 if not supported. Only call this when the event is enabled.
+	 */
+	static long allocatedBytes() {
+		return Threads.THREADS == null ? 0 : Threads.THREADS.getCurrentThreadAllocatedBytes();
+	}
+}
@@ -0,0 +1,112 @@
+package util.reflect;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A List of Longs stored in a long[], without a boxed Long per item. Null items are not accepted.
+ * Selected by DefaultValueGenerator for List&lt;Long&gt; when PRIMITIVE_COLLECTIONS is on.
+ */
+public class LongArrayList extends AbstractList<Long> implements RandomAccess, PrimitiveCollection {
+
+	private static final long[] EMPTY = {};
+
+	private long[] items;
+	private int size;
+
+	public LongArrayList() {
+		items = EMPTY;
+	}
+
+	public LongArrayList(int capacity) {
+		items = capacity == 0 ? EMPTY : new long[capacity];
+	}
+
+	public long getLong(int index) {
+		Objects.checkIndex(index, size);
+		return items[index];
+	}
+
+	public long setLong(int index, long item) {
+		Objects.checkIndex(index, size);
+		long previous = items[index];
+		items[index] = item;
+		return previous;
+	}
+
+	public void addLong(long item) {
+		addLong(size, item);
+	}
+
+	public void addLong(int index, long item) {
+		Objects.checkIndex(index, size + 1);
+		if (size == items.length) {
+			items = Arrays.copyOf(items, Math.max(size + (size >> 1), 4));
+		}
+		System.arraycopy(items, index, items, index + 1, size - index);
+		items[index] = item;
+		size++;
+		modCount++;
+	}
+
+	public long removeLong(int index) {
+		Objects.checkIndex(index, size);
+		long previous = items[index];
+		System.arraycopy(items, index + 1, items, index, size - index - 1);
+		size--;
+		modCount++;
+		return previous;
+	}
+
+	/**
+	 * A copy of the items.
+	 */
+	public long[] toLongArray() {
+		return Arrays.copyOf(items, size);
+	}
+
+	@Override
+	public Long get(int index) {
+		return getLong(index);
+	}
+
+	@Override
+	public Long set(int index, Long item) {
+		return setLong(index, item);
+	}
+
+	@Override
+	public void add(int index, Long item) {
+		addLong(index, item);
+	}
+
+	@Override
+	public Long remove(int index) {
+		return removeLong(index);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Class<?> getPrimitiveClass() {
+		return long.class;
+	}
+
+	@Override
+	public void setItems(Object items) {
+		this.items = (long[]) items;
+		size = this.items.length;
+		modCount++;
+	}
+}
@@ -0,0 +1,273 @@
+package util.reflect;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A Set of Longs stored in an open addressing long[] hash table with linear probing, without a boxed Long or entry per item. Null items are not accepted.
+ * 0 marks the empty slots of the table, so the item 0 is stored as a flag instead. Removal shifts the following items of the probe sequence back, leaving no tombstones.
+ * setItems adds the given items one by one, so duplicates are dropped and the set may end up smaller than the array, as with the items generated for a boxed HashSet.
+ * Selected by DefaultValueGenerator for Set&lt;Long&gt; when PRIMITIVE_COLLECTIONS is on.
+ */
+public class LongHashSet extends AbstractSet<Long> implements PrimitiveCollection {
+
+	private static final float LOAD_FACTOR = 0.75f;
+	private static final int MIN_CAPACITY = 4;
+
+	private long[] table;
+	private boolean containsZero;
+	private int size;
+	// counts the structural modifications, for the iterators to fail fast on concurrent ones
+	private int modCount;
+
+	public LongHashSet() {
+		this(0);
+	}
+
+	/**
+	 * Create a set which holds the given number of items without resizing.
+	 */
+	public LongHashSet(int expectedSize) {
+		table = new long[capacity(expectedSize)];
+	}
+
+	private static int capacity(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * LOAD_FACTOR < expectedSize + 1) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private int slot(long item) {
+		long hash = item * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ hash >>> 32) & table.length - 1;
+	}
+
+	/**
+	 * The slot of the given non-zero item, or the empty slot where it would be inserted.
+	 */
+	private int find(long item) {
+		int slot = slot(item);
+		while (table[slot] != 0 && table[slot] != item) {
+			slot = slot + 1 & table.length - 1;
+		}
+		return slot;
+	}
+
+	public boolean containsLong(long item) {
+		return item == 0 ? containsZero : table[find(item)] != 0;
+	}
+
+	public boolean addLong(long item) {
+		if (item == 0) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			size++;
+			modCount++;
+			return true;
+		}
+		int slot = find(item);
+		if (table[slot] != 0) {
+			return false;
+		}
+		table[slot] = item;
+		size++;
+		modCount++;
+		if (size > table.length * LOAD_FACTOR) {
+			rehash(table.length << 1);
+		}
+		return true;
+	}
+
+	public boolean removeLong(long item) {
+		if (item == 0) {
+			if (!containsZero) {
+				return false;
+			}
+			containsZero = false;
+			size--;
+			modCount++;
+			return true;
+		}
+		int slot = find(item);
+		if (table[slot] == 0) {
+			return false;
+		}
+		removeSlot(slot);
+		return true;
+	}
+
+	/**
+	 * Empty the given slot, moving back the following items of its probe sequence which may no longer be reachable past it.
+	 */
+	private void removeSlot(int slot) {
+		int mask = table.length - 1;
+		int hole = slot;
+		for (int next = hole + 1 & mask; table[next] != 0; next = next + 1 & mask) {
+			int home = slot(table[next]);
+			// the item can move to the hole unless its home slot lies cyclically in (hole, next]
+			if ((next - home & mask) >= (next - hole & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+		size--;
+		modCount++;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldTable = table;
+		table = new long[capacity];
+		for (long item : oldTable) {
+			if (item != 0) {
+				table[find(item)] = item;
+			}
+		}
+	}
+
+	/**
+	 * A copy of the items, in iteration order.
+	 */
+	public long[] toLongArray() {
+		long[] items = new long[size];
+		int i = 0;
+		for (LongIterator iterator = new LongIterator(); iterator.hasNext();) {
+			items[i++] = iterator.nextLong();
+		}
+		return items;
+	}
+
+	@Override
+	public boolean contains(Object item) {
+		return item instanceof Long theItem && containsLong(theItem);
+	}
+
+	@Override
+	public boolean add(Long item) {
+		return addLong(item);
+	}
+
+	@Override
+	public boolean remove(Object item) {
+		return item instanceof Long theItem && removeLong(theItem);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(table, 0);
+		containsZero = false;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Iterator<Long> iterator() {
+		return new LongIterator();
+	}
+
+	@Override
+	public Class<?> getPrimitiveClass() {
+		return long.class;
+	}
+
+	@Override
+	public void setItems(Object items) {
+		long[] theItems = (long[]) items;
+		table = new long[capacity(theItems.length)];
+		containsZero = false;
+		size = 0;
+		modCount++;
+		for (long item : theItems) {
+			addLong(item);
+		}
+	}
+
+	/**
+	 * Iterates the table downwards starting below an empty slot, so that the items moved back by a removal are always ones already iterated, then the item 0.
+	 * Fails with a ConcurrentModificationException once the set is modified other than through the iterator.
+	 */
+	private class LongIterator implements Iterator<Long> {
+		private int expectedModCount = modCount;
+		private int remaining;
+		private int slot;
+		private boolean zeroPending = containsZero;
+		private int lastSlot = -1;
+		private boolean lastZero;
+
+		LongIterator() {
+			int empty = 0;
+			while (table[empty] != 0) {
+				empty++;
+			}
+			slot = empty;
+			remaining = table.length - 1;
+		}
+
+		@Override
+		public boolean hasNext() {
+			checkModCount();
+			while (remaining > 0 && table[slot - 1 & table.length - 1] == 0) {
+				slot = slot - 1 & table.length - 1;
+				remaining--;
+			}
+			return remaining > 0 || zeroPending;
+		}
+
+		long nextLong() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastZero = false;
+			if (remaining > 0) {
+				slot = slot - 1 & table.length - 1;
+				remaining--;
+				lastSlot = slot;
+				return table[slot];
+			}
+			zeroPending = false;
+			lastZero = true;
+			lastSlot = -1;
+			return 0;
+		}
+
+		@Override
+		public Long next() {
+			return nextLong();
+		}
+
+		@Override
+		public void remove() {
+			checkModCount();
+			if (lastZero) {
+				containsZero = false;
+				size--;
+				modCount++;
+				lastZero = false;
+			} else if (lastSlot >= 0) {
+				removeSlot(lastSlot);
+				lastSlot = -1;
+			} else {
+				throw new IllegalStateException();
+			}
+			expectedModCount = modCount;
+		}
+
+		private void checkModCount() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+}
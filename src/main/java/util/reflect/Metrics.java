@@ -0,0 +1,202 @@
+package util.reflect;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The MetricsMXBean implementation. All the counters are LongAdders, so that recording from many threads does not contend on a single cache line.
+ */
+class Metrics implements MetricsMXBean {
+
+	static final String OBJECT_NAME = "util.reflect:type=Metrics";
+
+	static final Metrics INSTANCE = new Metrics();
+
+	private static final int BUCKETS = 65;
+
+	private final Map<ContextualType<?>, Stats> generationStats = new ConcurrentHashMap<>();
+	private final Map<Class<?>, Stats> cloneStats = new ConcurrentHashMap<>();
+
+	private final LongAdder classContextCacheHits = new LongAdder();
+	private final LongAdder classContextCacheMisses = new LongAdder();
+	private final LongAdder arrayContextCacheHits = new LongAdder();
+	private final LongAdder arrayContextCacheMisses = new LongAdder();
+	private final LongAdder constructorProbeFailures = new LongAdder();
+	private final LongAdder inferenceFailures = new LongAdder();
+
+	private static class Stats {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nodes = new LongAdder();
+		private final LongAdder[] latency = new LongAdder[BUCKETS];
+
+		Stats() {
+			for (int i = 0; i < BUCKETS; i++) {
+				latency[i] = new LongAdder();
+			}
+		}
+
+		void record(long nanos, long nodeCount) {
+			count.increment();
+			nodes.add(nodeCount);
+			latency[64 - Long.numberOfLeadingZeros(Math.max(nanos, 0))].increment();
+		}
+
+		long[] histogram() {
+			long[] histogram = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				histogram[i] = latency[i].sum();
+			}
+			return histogram;
+		}
+	}
+
+	/**
+	 * Register the MXBean in the platform MBeanServer, ignoring failures such as being registered already by another class loader.
+	 */
+	static void register() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (JMException | SecurityException e) {
+		}
+	}
+
+	void recordGeneration(ContextualType<?> rootType, long nanos, long nodeCount) {
+		stats(generationStats, rootType).record(nanos, nodeCount);
+	}
+
+	void recordClone(Class<?> rootClass, long nanos, long nodeCount) {
+		stats(cloneStats, rootClass).record(nanos, nodeCount);
+	}
+
+	void recordClassContextLookup(boolean cacheHit) {
+		(cacheHit ? classContextCacheHits : classContextCacheMisses).increment();
+	}
+
+	void recordArrayContextLookup(boolean cacheHit) {
+		(cacheHit ? arrayContextCacheHits : arrayContextCacheMisses).increment();
+	}
+
+	void recordConstructorProbeFailure() {
+		constructorProbeFailures.increment();
+	}
+
+	void recordInferenceFailure() {
+		inferenceFailures.increment();
+	}
+
+	private static <K> Stats stats(Map<K, Stats> map, K key) {
+		Stats stats = map.get(key);
+		return stats != null ? stats : map.computeIfAbsent(key, k -> new Stats());
+	}
+
+	private static <K, V> Map<String, V> snapshot(Map<K, Stats> map, Function<Stats, V> value) {
+		Map<String, V> result = new TreeMap<>();
+		map.forEach((key, stats) -> result.put(key instanceof Class<?> clazz ? clazz.getName() : key.toString(), value.apply(stats)));
+		return result;
+	}
+
+	private static double ratio(LongAdder hits, LongAdder misses) {
+		long theHits = hits.sum();
+		long total = theHits + misses.sum();
+		return total == 0 ? 0 : (double) theHits / total;
+	}
+
+	@Override
+	public Map<String, Long> getGenerationCounts() {
+		return snapshot(generationStats, stats -> stats.count.sum());
+	}
+
+	@Override
+	public Map<String, Long> getGenerationNodeCounts() {
+		return snapshot(generationStats, stats -> stats.nodes.sum());
+	}
+
+	@Override
+	public Map<String, long[]> getGenerationLatencyHistograms() {
+		return snapshot(generationStats, Stats::histogram);
+	}
+
+	@Override
+	public Map<String, Long> getCloneCounts() {
+		return snapshot(cloneStats, stats -> stats.count.sum());
+	}
+
+	@Override
+	public Map<String, Long> getCloneNodeCounts() {
+		return snapshot(cloneStats, stats -> stats.nodes.sum());
+	}
+
+	@Override
+	public Map<String, long[]> getCloneLatencyHistograms() {
+		return snapshot(cloneStats, Stats::histogram);
+	}
+
+	@Override
+	public int getClassContextCacheSize() {
+		return ClassContext.getInternedClassContexts().size();
+	}
+
+	@Override
+	public long getClassContextCacheHits() {
+		return classContextCacheHits.sum();
+	}
+
+	@Override
+	public long getClassContextCacheMisses() {
+		return classContextCacheMisses.sum();
+	}
+
+	@Override
+	public double getClassContextCacheHitRatio() {
+		return ratio(classContextCacheHits, classContextCacheMisses);
+	}
+
+	@Override
+	public int getArrayContextCacheSize() {
+		return ArrayContext.getInternedArrayContexts().size();
+	}
+
+	@Override
+	public long getArrayContextCacheHits() {
+		return arrayContextCacheHits.sum();
+	}
+
+	@Override
+	public long getArrayContextCacheMisses() {
+		return arrayContextCacheMisses.sum();
+	}
+
+	@Override
+	public double getArrayContextCacheHitRatio() {
+		return ratio(arrayContextCacheHits, arrayContextCacheMisses);
+	}
+
+	@Override
+	public long getConstructorProbeFailures() {
+		return constructorProbeFailures.sum();
+	}
+
+	@Override
+	public long getInferenceFailures() {
+		return inferenceFailures.sum();
+	}
+
+	@Override
+	public void reset() {
+		generationStats.clear();
+		cloneStats.clear();
+		classContextCacheHits.reset();
+		classContextCacheMisses.reset();
+		arrayContextCacheHits.reset();
+		arrayContextCacheMisses.reset();
+		constructorProbeFailures.reset();
+		inferenceFailures.reset();
+	}
+}
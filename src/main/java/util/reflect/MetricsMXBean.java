@@ -0,0 +1,65 @@
+package util.reflect;
+
+import java.util.Map;
+
+/**
+ * Always-on counters of this library, registered in the platform MBeanServer as {@value Metrics#OBJECT_NAME}.
+ * Latency histograms have 65 buckets, where bucket i counts the calls which took [2^(i-1), 2^i) nanoseconds.
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * Number of top level randomInstance/randomizeInto calls per root type.
+	 */
+	Map<String, Long> getGenerationCounts();
+
+	/**
+	 * Number of nodes generated by top level randomInstance/randomizeInto calls per root type.
+	 */
+	Map<String, Long> getGenerationNodeCounts();
+
+	Map<String, long[]> getGenerationLatencyHistograms();
+
+	/**
+	 * Number of top level deepClone calls per root class.
+	 */
+	Map<String, Long> getCloneCounts();
+
+	/**
+	 * Number of objects cloned by top level deepClone calls per root class.
+	 */
+	Map<String, Long> getCloneNodeCounts();
+
+	Map<String, long[]> getCloneLatencyHistograms();
+
+	int getClassContextCacheSize();
+
+	long getClassContextCacheHits();
+
+	long getClassContextCacheMisses();
+
+	double getClassContextCacheHitRatio();
+
+	int getArrayContextCacheSize();
+
+	long getArrayContextCacheHits();
+
+	long getArrayContextCacheMisses();
+
+	double getArrayContextCacheHitRatio();
+
+	/**
+	 * Number of constructors which failed to be invoked with default arguments when searching for a usable constructor.
+	 */
+	long getConstructorProbeFailures();
+
+	/**
+	 * Number of InferUtil.infer calls which threw a TypeInferenceException.
+	 */
+	long getInferenceFailures();
+
+	/**
+	 * Reset all the counters and histograms.
+	 */
+	void reset();
+}
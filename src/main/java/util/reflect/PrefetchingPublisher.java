@@ -0,0 +1,214 @@
+package util.reflect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Generate random instances in background worker threads into a bounded buffer, so that consumers get ready instances without waiting for the generation.
+ * Workers block when the buffer is full. Instances are taken from the buffer either with {@link #take()} or by Flow.Subscribers,
+ * each of which is delivered instances on a delivery thread of this publisher according to its demand. Each instance is only delivered once, to a single consumer,
+ * and null instances, which Flow.Subscribers cannot receive, are skipped for them.
+ *
+ * Every worker uses its own ValueGenerator from the given Supplier, since ValueGenerators are not expected to be thread-safe, while the ContextualTypes and their lazily computed analysis are shared.
+ * An instance taken by a Subscription cancelled before delivering it is given back ahead of the buffer, so that it is neither lost nor reordered behind later instances.
+ * If generation fails, the publisher is closed and the failure is thrown by take() and passed to the subscribers once the buffer is drained.
+ */
+@SuppressWarnings("unchecked")
+public class PrefetchingPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+
+	// ArrayBlockingQueue does not accept null, so null instances are buffered as this
+	private static final Object NULL = new Object();
+	private static final long POLL_MILLIS = 50;
+
+	private final ContextualType<T> type;
+	private final BlockingQueue<Object> buffer;
+	// instances taken by cancelled Subscriptions, delivered before the buffer
+	private final ConcurrentLinkedDeque<Object> returned = new ConcurrentLinkedDeque<>();
+	private final List<Thread> workers = new ArrayList<>();
+	private final ExecutorService deliveryExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "prefetching-publisher-delivery");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private volatile boolean closed;
+	private volatile Throwable failure;
+
+	/**
+	 * Start the given number of worker threads, generating instances of the given type into a buffer of the given capacity.
+	 */
+	public PrefetchingPublisher(ContextualType<T> type, Supplier<? extends ValueGenerator> generators, int capacity, int workerCount) {
+		if (capacity <= 0 || workerCount <= 0) {
+			throw new IllegalArgumentException("capacity and workerCount must be positive");
+		}
+		this.type = type;
+		this.buffer = new ArrayBlockingQueue<>(capacity);
+		for (int i = 0; i < workerCount; i++) {
+			ValueGenerator generator = generators.get();
+			Thread worker = new Thread(() -> generate(generator), "prefetching-publisher-worker-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+		}
+		workers.forEach(Thread::start);
+	}
+
+	private void generate(ValueGenerator generator) {
+		try {
+			while (!closed) {
+				T instance = type.randomInstance(generator);
+				buffer.put(instance == null ? NULL : instance);
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			failure = e;
+			close();
+		}
+	}
+
+	/**
+	 * Take the next generated instance, waiting for one if the buffer is empty.
+	 * An IllegalStateException is thrown if this publisher is closed and the buffer is drained.
+	 */
+	public T take() throws InterruptedException {
+		Object instance = next();
+		if (instance == null) {
+			throw new IllegalStateException("PrefetchingPublisher is closed", failure);
+		}
+		return instance == NULL ? null : (T) instance;
+	}
+
+	/**
+	 * The next instance given back by a cancelled Subscription or else buffered, or null if closed and both are drained.
+	 */
+	private Object next() throws InterruptedException {
+		while (true) {
+			Object instance = returned.pollFirst();
+			if (instance == null) {
+				instance = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			if (instance != null || closed && buffer.isEmpty() && returned.isEmpty()) {
+				return instance;
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		subscriber.onSubscribe(new Subscription(subscriber));
+	}
+
+	/**
+	 * Stop the workers. Instances already buffered can still be taken, after which subscribers are completed.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (Thread worker : workers) {
+			if (worker != Thread.currentThread()) {
+				worker.interrupt();
+			}
+		}
+		deliveryExecutor.shutdown();
+	}
+
+	private class Subscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		// number of request calls not yet seen by the delivery loop, which runs while it is non-zero
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean cancelled;
+
+		Subscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancelled = true;
+				subscriber.onError(new IllegalArgumentException("Requested " + n + " items"));
+				return;
+			}
+			demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			if (pending.getAndIncrement() == 0) {
+				deliver();
+			}
+		}
+
+		private void deliver() {
+			try {
+				deliveryExecutor.execute(this);
+			} catch (RuntimeException e) {
+				// the executor is shut down after close, deliver the remaining buffer on the requesting thread
+				run();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			try {
+				while (true) {
+					long requested = demand.get();
+					long delivered = 0;
+					while (delivered != requested) {
+						if (cancelled) {
+							return;
+						}
+						Object instance = next();
+						if (instance == null) {
+							cancelled = true;
+							if (failure != null) {
+								subscriber.onError(failure);
+							} else {
+								subscriber.onComplete();
+							}
+							return;
+						}
+						if (cancelled) {
+							// give the instance back for the other consumers, ahead of the instances buffered after it
+							returned.offerFirst(instance);
+							return;
+						}
+						if (instance != NULL) {
+							subscriber.onNext((T) instance);
+							delivered++;
+						}
+					}
+					if (requested != Long.MAX_VALUE) {
+						demand.addAndGet(-delivered);
+					}
+					missed = pending.addAndGet(-missed);
+					if (missed == 0) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				cancelled = true;
+				subscriber.onError(e);
+			}
+		}
+	}
+}
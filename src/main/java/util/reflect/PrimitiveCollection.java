@@ -0,0 +1,28 @@
+package util.reflect;
+
+import java.lang.reflect.Field;
+
+/**
+ * A collection of boxed primitives stored unboxed in a primitive array, such as {@link IntArrayList} or {@link IntHashSet}.
+ * randomInstance generates its items in bulk into a primitive array with {@link ValueGenerator#generateItems(ContextualType, String, Object)} when the ValueGenerator supports it.
+ */
+interface PrimitiveCollection {
+
+	/**
+	 * The primitive class of the items, e.g. int.class.
+	 */
+	Class<?> getPrimitiveClass();
+
+	/**
+	 * Replace the items with the ones of the given primitive array of the primitive class, which may be kept as the storage of this collection.
+	 * A set drops the duplicates of the array, so its size may be smaller than the array length.
+	 */
+	void setItems(Object items);
+
+	/**
+	 * Whether the field is one of the internal fields of a PrimitiveCollection, which DefaultValueGenerator and DefaultCloneOptions ignore as they do the fields of java.util collections.
+	 */
+	static boolean isInternalField(Field field) {
+		return PrimitiveCollection.class.isAssignableFrom(field.getDeclaringClass());
+	}
+}
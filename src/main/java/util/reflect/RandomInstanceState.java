@@ -1,10 +1,9 @@
 package util.reflect;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 class RandomInstanceState {
 
@@ -12,34 +11,77 @@ class RandomInstanceState {
 
 	private String joinedPath;
 
-	private Map<ContextualType<?>, List<Object>> recursiveReferences = new LinkedHashMap<>();
+	// false when the ValueGenerator ignores the paths, which are then not built, but their depth is still tracked for the GenerationBudget
+	private boolean pathUsed = true;
+	private int pathDepth;
+
+	// The instances being generated, from the outermost, with their ContextualTypes
+	private ContextualType<?>[] instanceTypes = new ContextualType<?>[16];
+	private Object[] instances = new Object[16];
+	private int depth;
+	// Number of instances being generated per bucket of ContextualType hash codes (computed once by each ContextualType), so that most recursion checks end without scanning the instances
+	private final int[] instanceCounts = new int[64];
+
+	// An existing instance which the next randomInstance call may randomize in place instead of creating a new one
+	private Object reuse;
+
+	private long nodeCount;
+
+	private GenerationBudget budget;
+
+	private long allocatedBytes;
+
+	void setPathUsed(boolean pathUsed) {
+		this.pathUsed = pathUsed;
+	}
 
 	void pushFieldPath(String name) {
-		path.add(path.size() == 0 ? name : "." + name);
-		joinedPath = null;
+		pathDepth++;
+		if (pathUsed) {
+			path.add(pathDepth == 1 ? name : "." + name);
+			joinedPath = null;
+		}
 	}
 
 	void pushIndexPath(int index) {
-		path.add("[" + index + "]");
-		joinedPath = null;
+		pathDepth++;
+		if (pathUsed) {
+			path.add("[" + index + "]");
+			joinedPath = null;
+		}
 	}
 
 	void pushMapKeyPath() {
-		path.add("[:key]");
-		joinedPath = null;
+		pathDepth++;
+		if (pathUsed) {
+			path.add("[:key]");
+			joinedPath = null;
+		}
 	}
 
 	void pushMapValuePath() {
-		path.add("[:value]");
-		joinedPath = null;
+		pathDepth++;
+		if (pathUsed) {
+			path.add("[:value]");
+			joinedPath = null;
+		}
 	}
 
 	void popPath() {
-		path.remove(path.size() - 1);
-		joinedPath = null;
+		pathDepth--;
+		if (pathUsed) {
+			path.remove(path.size() - 1);
+			joinedPath = null;
+		}
 	}
 
+	/**
+	 * The current path, or an empty one if the paths are not used.
+	 */
 	String joinPath() {
+		if (!pathUsed) {
+			return "";
+		}
 		if (joinedPath == null) {
 			joinedPath = String.join("", path);
 		}
@@ -47,15 +89,98 @@ class RandomInstanceState {
 	}
 
 	void pushInstance(ContextualType<?> type, Object instance) {
-		recursiveReferences.computeIfAbsent(type, t -> new ArrayList<>()).add(instance);
+		if (depth == instances.length) {
+			instanceTypes = Arrays.copyOf(instanceTypes, depth * 2);
+			instances = Arrays.copyOf(instances, depth * 2);
+		}
+		instanceTypes[depth] = type;
+		instances[depth] = instance;
+		depth++;
+		instanceCounts[type.hashCode() & 63]++;
 	}
 
 	void popInstance(ContextualType<?> type) {
-		List<Object> instances = recursiveReferences.get(type);
-		instances.remove(instances.size() - 1);
+		depth--;
+		instanceTypes[depth] = null;
+		instances[depth] = null;
+		instanceCounts[type.hashCode() & 63]--;
 	}
 
+	/**
+	 * The instances of the given ContextualType being generated, from the outermost. Only allocates when there are any.
+	 */
 	List<Object> getInstances(ContextualType<?> type) {
-		return recursiveReferences.getOrDefault(type, Collections.emptyList());
+		if (instanceCounts[type.hashCode() & 63] == 0) {
+			return Collections.emptyList();
+		}
+		List<Object> result = null;
+		for (int i = 0; i < depth; i++) {
+			if (instanceTypes[i] == type || instanceTypes[i].equals(type)) {
+				if (result == null) {
+					result = new ArrayList<>();
+				}
+				result.add(instances[i]);
+			}
+		}
+		return result == null ? Collections.emptyList() : result;
+	}
+
+	void countNode() {
+		nodeCount++;
+	}
+
+	void countNodes(int count) {
+		nodeCount += count;
+	}
+
+	long getNodeCount() {
+		return nodeCount;
+	}
+
+	void setBudget(GenerationBudget budget) {
+		this.budget = budget;
+	}
+
+	void addBytes(long bytes) {
+		allocatedBytes += bytes;
+	}
+
+	long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Whether no more objects should be created, because of too many nodes or bytes generated, or the path being too deep.
+	 */
+	boolean isBudgetExhausted() {
+		return budget != null && (nodeCount >= budget.getMaxNodes() || allocatedBytes >= budget.getMaxBytes() || pathDepth > budget.getMaxDepth());
+	}
+
+	/**
+	 * Scale down the given collection size as the budget runs low: sizes are kept while more than half of the budget remains, then shrink linearly to 0.
+	 */
+	int budgetCollectionSize(int size) {
+		if (budget == null) {
+			return size;
+		}
+		if (pathDepth >= budget.getMaxDepth()) {
+			return 0;
+		}
+		double remaining = Math.min(1 - (double) nodeCount / budget.getMaxNodes(), 1 - (double) allocatedBytes / budget.getMaxBytes());
+		if (remaining <= 0) {
+			return 0;
+		}
+		int scaled = remaining >= 0.5 ? size : (int) (size * remaining * 2);
+		return (int) Math.min(scaled, budget.getMaxNodes() - nodeCount);
+	}
+
+	void setReuse(Object instance) {
+		reuse = instance;
+	}
+
+	Object takeReuse() {
+		Object instance = reuse;
+		reuse = null;
+		return instance;
 	}
 }
@@ -0,0 +1,397 @@
+package util.reflect;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write randomly generated records to a channel as NDJSON (one JSON document per line) or CSV, without creating the instances.
+ * Values are generated by the ValueGenerator with the same decisions as randomInstance, and written through reusable buffers,
+ * so the memory used does not grow with the number of records written.
+ *
+ * In CSV format, each field of the record is a column, and nested objects, arrays, collections and maps are written as JSON text in the cell. The header is taken from the fields of the first record.
+ * Values returned by the ValueGenerator without calling {@link ValueGenerator.CurrentInstanceContext#randomInstance()} are written as JSON numbers or booleans where applicable, or as their string representation.
+ */
+public class RecordWriter implements Flushable, Closeable {
+
+	public enum Format {
+		NDJSON, CSV
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final OutputStream stream;
+	private final Format format;
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final RecordVisitor visitor = new RecordVisitor();
+	private final RandomInstanceState state = new RandomInstanceState();
+	private boolean headerWritten;
+
+	public RecordWriter(WritableByteChannel channel, Format format) {
+		this.channel = channel;
+		this.stream = null;
+		this.format = format;
+	}
+
+	public RecordWriter(OutputStream stream, Format format) {
+		this.channel = Channels.newChannel(stream);
+		this.stream = stream;
+		this.format = format;
+	}
+
+	/**
+	 * Generate and write the given number of records of the given ContextualType.
+	 */
+	public void write(ContextualType<?> type, ValueGenerator generator, long count) throws ReflectiveOperationException, IOException {
+		for (long i = 0; i < count; i++) {
+			visitor.reset();
+			type.generate(generator, visitor, state);
+			visitor.line.append('\n');
+			if (format == Format.CSV && !headerWritten) {
+				encode(visitor.header());
+				headerWritten = true;
+			}
+			encode(visitor.line);
+		}
+	}
+
+	private void encode(CharSequence text) throws IOException {
+		CharBuffer chars = CharBuffer.wrap(text);
+		encoder.reset();
+		CoderResult result = encoder.encode(chars, buffer, true);
+		while (result.isOverflow()) {
+			drain();
+			result = encoder.encode(chars, buffer, true);
+		}
+		while (encoder.flush(buffer).isOverflow()) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+		if (stream != null) {
+			stream.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private class RecordVisitor implements GenerationVisitor {
+
+		private final StringBuilder line = new StringBuilder();
+		private final List<String> columns = new ArrayList<>();
+
+		// the buffer currently written into, either the line or the innermost capture
+		private StringBuilder out;
+
+		// map keys and CSV cells are captured first, then escaped into the enclosing buffer
+		private final List<StringBuilder> captureBuffers = new ArrayList<>();
+		private int[] captureDepths = new int[8];
+		private boolean[] captureKeys = new boolean[8];
+		private int captures;
+
+		private boolean[] first = new boolean[16];
+		private int depth;
+		private boolean pendingValue;
+		// the root is an object and its fields are written as CSV cells
+		private boolean csvRow;
+
+		void reset() {
+			line.setLength(0);
+			out = line;
+			captures = 0;
+			depth = 0;
+			pendingValue = false;
+			csvRow = false;
+		}
+
+		CharSequence header() {
+			StringBuilder header = new StringBuilder();
+			if (!csvRow) {
+				columns.clear();
+				columns.add("value");
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) {
+					header.append(',');
+				}
+				appendCsvCell(header, columns.get(i));
+			}
+			return header.append('\n');
+		}
+
+		@Override
+		public void beginObject(ContextualType<?> type, String path) {
+			if (format == Format.CSV && depth == 0 && captures == 0) {
+				csvRow = true;
+				push();
+				return;
+			}
+			beforeValue();
+			out.append('{');
+			push();
+		}
+
+		@Override
+		public void field(Field field) {
+			if (!first[depth]) {
+				out.append(',');
+			}
+			first[depth] = false;
+			pendingValue = true;
+			if (csvRow && depth == 1) {
+				if (!headerWritten) {
+					columns.add(field.getName());
+				}
+				startCapture(false);
+			} else {
+				appendJsonString(out, field.getName());
+				out.append(':');
+			}
+		}
+
+		@Override
+		public void endObject() {
+			depth--;
+			if (!csvRow || depth > 0) {
+				out.append('}');
+			}
+			afterValue();
+		}
+
+		@Override
+		public void beginCollection(ContextualType<?> type, String path, int size) {
+			beforeValue();
+			out.append('[');
+			push();
+		}
+
+		@Override
+		public void endCollection() {
+			depth--;
+			out.append(']');
+			afterValue();
+		}
+
+		@Override
+		public void beginMap(ContextualType<?> type, String path, int size) {
+			beforeValue();
+			out.append('{');
+			push();
+		}
+
+		@Override
+		public void mapKey() {
+			if (!first[depth]) {
+				out.append(',');
+			}
+			first[depth] = false;
+			pendingValue = true;
+			startCapture(true);
+		}
+
+		@Override
+		public void mapValue() {
+			// the key capture ends with the key value, which also writes the separator
+		}
+
+		@Override
+		public void endMap() {
+			depth--;
+			out.append('}');
+			afterValue();
+		}
+
+		@Override
+		public void value(ContextualType<?> type, String path, Object value) {
+			beforeValue();
+			if (captures > 0 && captureDepths[captures - 1] == depth) {
+				if (value != null) {
+					appendText(out, value);
+				}
+			} else {
+				appendJson(out, value);
+			}
+			afterValue();
+		}
+
+		private void push() {
+			depth++;
+			if (depth == first.length) {
+				first = Arrays.copyOf(first, depth * 2);
+			}
+			first[depth] = true;
+		}
+
+		private void beforeValue() {
+			if (pendingValue) {
+				pendingValue = false;
+				return;
+			}
+			if (depth == 0) {
+				if (format == Format.CSV) {
+					// a root which is not an object is written as a single cell
+					startCapture(false);
+				}
+				return;
+			}
+			if (!first[depth]) {
+				out.append(',');
+			}
+			first[depth] = false;
+		}
+
+		private void afterValue() {
+			if (captures > 0 && captureDepths[captures - 1] == depth) {
+				endCapture();
+			}
+		}
+
+		private void startCapture(boolean key) {
+			if (captures == captureBuffers.size()) {
+				captureBuffers.add(new StringBuilder());
+			}
+			if (captures == captureDepths.length) {
+				captureDepths = Arrays.copyOf(captureDepths, captures * 2);
+				captureKeys = Arrays.copyOf(captureKeys, captures * 2);
+			}
+			out = captureBuffers.get(captures);
+			out.setLength(0);
+			captureDepths[captures] = depth;
+			captureKeys[captures] = key;
+			captures++;
+		}
+
+		private void endCapture() {
+			captures--;
+			StringBuilder captured = captureBuffers.get(captures);
+			out = captures == 0 ? line : captureBuffers.get(captures - 1);
+			if (captureKeys[captures]) {
+				appendJsonString(out, captured);
+				out.append(':');
+				pendingValue = true;
+			} else {
+				appendCsvCell(out, captured);
+			}
+		}
+	}
+
+	private static void appendText(StringBuilder out, Object value) {
+		if (value instanceof Enum<?> theValue) {
+			out.append(theValue.name());
+		} else if (value instanceof Class<?> theValue) {
+			out.append(theValue.getName());
+		} else if (value instanceof Integer theValue) {
+			out.append(theValue.intValue());
+		} else if (value instanceof Long theValue) {
+			out.append(theValue.longValue());
+		} else {
+			out.append(value);
+		}
+	}
+
+	private static void appendJson(StringBuilder out, Object value) {
+		if (value == null
+				|| value instanceof Boolean
+				|| value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+				|| value instanceof Double theDouble && Double.isFinite(theDouble)
+				|| value instanceof Float theFloat && Float.isFinite(theFloat)) {
+			appendText(out, value);
+			return;
+		}
+		int start = out.length();
+		appendText(out, value);
+		// escape the text in place, as most text does not need escaping
+		String text = null;
+		for (int i = start; i < out.length(); i++) {
+			char c = out.charAt(i);
+			if (c == '"' || c == '\\' || c < 0x20) {
+				text = out.substring(start);
+				break;
+			}
+		}
+		if (text == null) {
+			out.insert(start, '"').append('"');
+		} else {
+			out.setLength(start);
+			appendJsonString(out, text);
+		}
+	}
+
+	private static void appendJsonString(StringBuilder out, CharSequence text) {
+		out.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"': out.append("\\\""); break;
+			case '\\': out.append("\\\\"); break;
+			case '\n': out.append("\\n"); break;
+			case '\r': out.append("\\r"); break;
+			case '\t': out.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	private static void appendCsvCell(StringBuilder out, CharSequence text) {
+		boolean quote = false;
+		for (int i = 0; i < text.length() && !quote; i++) {
+			char c = text.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.append(text);
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				out.append('"');
+			}
+			out.append(c);
+		}
+		out.append('"');
+	}
+}
@@ -9,7 +9,11 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import lombok.EqualsAndHashCode;
@@ -21,38 +25,54 @@ public class TypeResolver {
 	 * Resolve the TypeVariables referenced by the Type type
 	 */
 	public static Type resolve(Type type, Map<TypeVariable<?>, Type> map) {
+		return resolve(type, map, Set.of());
+	}
+
+	public static Type[] resolve(Type[] types, Map<TypeVariable<?>, Type> map) {
+		return resolve(types, map, Set.of());
+	}
+
+	/**
+	 * The resolving TypeVariables are those whose bounds are being resolved, which are left as they are when referenced from their own bounds, as in E extends Enum<E>.
+	 */
+	private static Type resolve(Type type, Map<TypeVariable<?>, Type> map, Set<TypeVariable<?>> resolving) {
 		if (type instanceof Class<?> || type instanceof ResolvedType) {
 			return type;
 		}
 		if (type instanceof GenericArrayType theType) {
 			return new ResolvedGenericArrayType(
-					resolve(theType.getGenericComponentType(), map));
+					resolve(theType.getGenericComponentType(), map, resolving));
 		}
 		if (type instanceof ParameterizedType theType) {
 			return new ResolvedParameterizedType(
-					resolve(theType.getActualTypeArguments(), map),
-					resolve(theType.getRawType(), map),
-					resolve(theType.getOwnerType(), map));
+					resolve(theType.getActualTypeArguments(), map, resolving),
+					resolve(theType.getRawType(), map, resolving),
+					resolve(theType.getOwnerType(), map, resolving));
 		}
 		if (type instanceof WildcardType theType) {
 			return new ResolvedWildcardType(
-					resolve(theType.getUpperBounds(), map),
-					resolve(theType.getLowerBounds(), map));
+					resolve(theType.getUpperBounds(), map, resolving),
+					resolve(theType.getLowerBounds(), map, resolving));
 		}
 		if (type instanceof TypeVariable<?> theType) {
 			Type resolvedType = map.get(theType);
 			if (resolvedType != null && resolvedType != theType) {
-				return resolve(resolvedType, map);
+				return resolve(resolvedType, map, resolving);
+			}
+			if (resolving.contains(theType)) {
+				return theType;
 			}
+			Set<TypeVariable<?>> theResolving = new HashSet<>(resolving);
+			theResolving.add(theType);
 			return new BoundsResolvedTypeVariable<>(
 					theType,
-					resolve(theType.getBounds(), map));
+					resolve(theType.getBounds(), map, theResolving));
 		}
 		return type;
 	}
 
-	public static Type[] resolve(Type[] types, Map<TypeVariable<?>, Type> map) {
-		return Stream.of(types).map(type -> resolve(type, map)).toArray(Type[]::new);
+	private static Type[] resolve(Type[] types, Map<TypeVariable<?>, Type> map, Set<TypeVariable<?>> resolving) {
+		return Stream.of(types).map(type -> resolve(type, map, resolving)).toArray(Type[]::new);
 	}
 
 	private interface ResolvedType {}
@@ -94,8 +114,9 @@ public class TypeResolver {
 		}
 	}
 
+	// equals and hashCode of ResolvedWildcardType, ParameterizedTypeImpl and GenericArrayTypeImpl are compatible with the JDK implementation,
+	// so that they can be used interchangeably as map keys
 	@RequiredArgsConstructor
-	@EqualsAndHashCode
 	private static class ResolvedWildcardType implements WildcardType, ResolvedType {
 		private final Type[] upper, lower;
 		@Override
@@ -107,6 +128,16 @@ public class TypeResolver {
 			return lower.clone();
 		}
 		@Override
+		public boolean equals(Object o) {
+			return o instanceof WildcardType that
+					&& Arrays.equals(lower, that.getLowerBounds())
+					&& Arrays.equals(upper, that.getUpperBounds());
+		}
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(lower) ^ Arrays.hashCode(upper);
+		}
+		@Override
 		public String toString() {
 			return "?" + (lower.length == 0 ? "" : " super " + lower[0]) + (upper[0] == Object.class ? "" : " extends " + upper[0]);
 		}
@@ -198,8 +229,21 @@ public class TypeResolver {
 		return actuals.length == 0 ? clazz : new ParameterizedTypeImpl(actuals, clazz, null);
 	}
 
+	/**
+	 * Return a ParameterizedType of the given raw type, owner type and actual type arguments as is.
+	 */
+	static ParameterizedType newParameterizedType(Type raw, Type owner, Type[] actuals) {
+		return new ParameterizedTypeImpl(actuals, raw, owner);
+	}
+
+	/**
+	 * Return a WildcardType of the given bounds as is.
+	 */
+	static WildcardType newWildcardType(Type[] upper, Type[] lower) {
+		return new ResolvedWildcardType(upper, lower);
+	}
+
 	@RequiredArgsConstructor
-	@EqualsAndHashCode
 	private static class ParameterizedTypeImpl implements ParameterizedType {
 		private final Type[] actuals;
 		private final Type raw, owner;
@@ -216,6 +260,17 @@ public class TypeResolver {
 			return owner;
 		}
 		@Override
+		public boolean equals(Object o) {
+			return o instanceof ParameterizedType that
+					&& Objects.equals(owner, that.getOwnerType())
+					&& Objects.equals(raw, that.getRawType())
+					&& Arrays.equals(actuals, that.getActualTypeArguments());
+		}
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(actuals) ^ Objects.hashCode(owner) ^ Objects.hashCode(raw);
+		}
+		@Override
 		public String toString() {
 			return (owner == null ? "" : owner + ".") + raw + (actuals == null ? "" : "<" + String.join(", ", Stream.of(actuals).map(Type::toString).toList()) + ">");
 		}
@@ -233,7 +288,6 @@ public class TypeResolver {
 	}
 
 	@RequiredArgsConstructor
-	@EqualsAndHashCode
 	private static class GenericArrayTypeImpl implements GenericArrayType {
 		private final Type componentType;
 		@Override
@@ -241,6 +295,14 @@ public class TypeResolver {
 			return componentType;
 		}
 		@Override
+		public boolean equals(Object o) {
+			return o instanceof GenericArrayType that && Objects.equals(componentType, that.getGenericComponentType());
+		}
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(componentType);
+		}
+		@Override
 		public String toString() {
 			return componentType + "[]";
 		}
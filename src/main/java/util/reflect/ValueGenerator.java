@@ -1,6 +1,7 @@
 package util.reflect;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -13,6 +14,9 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -44,6 +48,7 @@ public interface ValueGenerator {
 	 * If there is any circular reference formed (e.g. class A containing a field referencing class A), parent instances of the same ContextualType can be found in the recursed Object List.
 	 * If default random instance behaviour is desired, call {@link CurrentInstanceContext#randomInstance()} and return the instance.
 	 * Do not call {@link CurrentInstanceContext#randomInstance()} in order to break the recursion.
+	 * This is also called before creating an object once the {@link GenerationBudget} of the randomInstance call is exhausted, in which case the recursed Object List may be empty.
 	 */
 	Object onRecursion(ContextualType<?> type, String path, List<Object> recursed, CurrentInstanceContext currentInstanceContext) throws ReflectiveOperationException;
 
@@ -52,6 +57,59 @@ public interface ValueGenerator {
 	 */
 	int getCollectionSize(ContextualType<?> type, String path);
 
+	/**
+	 * The expected array/collection size for the given ContextualType, at the given path, as used by {@link CostModel}. Defaults to the average of the given number of getCollectionSize calls,
+	 * which advances whatever state getCollectionSize uses. Implementations knowing the distribution of their sizes should return its mean instead, without drawing anything.
+	 */
+	default double getExpectedCollectionSize(ContextualType<?> type, String path, int samples) {
+		long sum = 0;
+		for (int i = 0; i < samples; i++) {
+			sum += getCollectionSize(type, path);
+		}
+		return (double) sum / samples;
+	}
+
+	/**
+	 * Implementation of this method should return true if the collection or map generated for the given interface ContextualType (e.g. List, Set or Map), at the given path, should be made unmodifiable.
+	 * The generated implementation instance is then replaced by a compact copy of it, as made by List.copyOf, Set.copyOf or Map.copyOf, or by an unmodifiable wrapper if it contains null.
+	 */
+	default boolean isImmutableCollection(ContextualType<?> type, String path) {
+		return false;
+	}
+
+	/**
+	 * Implementation of this method may generate all the items of a collection stored in a primitive array (e.g. {@link IntArrayList} or {@link IntHashSet}) at once into the given
+	 * int[], long[] or double[] array and return true, instead of each item being generated boxed by generate. The given ContextualType is the item type, and the path is the one of the collection.
+	 * The items are given to {@link PrimitiveCollection#setItems(Object)}, and a set drops duplicates, so it may be smaller than getCollectionSize, as a boxed set is when duplicate items are generated.
+	 * It is also called for the primitive columns of a {@link ColumnBatch}, with the field type and path, and any other primitive array type may then be given.
+	 */
+	default boolean generateItems(ContextualType<?> itemType, String path, Object items) {
+		return false;
+	}
+
+	/**
+	 * Implementation of this method should return true if isIgnoredField and getImplementationClass only depend on the type and field, and not on the path.
+	 * They may then be called once per ContextualType, with an empty path, and their results cached until another ValueGenerator is used with the ContextualType.
+	 */
+	default boolean isPathIndependent() {
+		return false;
+	}
+
+	/**
+	 * The identity of the isIgnoredField and getImplementationClass decisions of a path independent ValueGenerator: the results cached for it are reused for the ValueGenerators with an equal key.
+	 * Defaults to the ValueGenerator itself, so that they are only reused for it.
+	 */
+	default Object getDecisionKey() {
+		return this;
+	}
+
+	/**
+	 * Implementation of this method should return false if none of its methods depend on their path argument. The paths are then not built while generating, and an empty path is given instead.
+	 */
+	default boolean isPathUsed() {
+		return true;
+	}
+
 
 	@FunctionalInterface
 	public interface CurrentInstanceContext {
@@ -69,9 +127,72 @@ public interface ValueGenerator {
 
 		protected int MIN_COLLECTION_SIZE = 3;
 		protected int MAX_COLLECTION_SIZE = 5;
+		protected boolean IMMUTABLE_COLLECTIONS = false;
+		// List<Integer>, List<Long>, List<Double>, Set<Integer> and Set<Long> generated as IntArrayList, LongArrayList, DoubleArrayList, IntHashSet and LongHashSet
+		protected boolean PRIMITIVE_COLLECTIONS = false;
 
 		protected Random random;
 
+		private static final ClassValue<Boolean> PATH_INDEPENDENT = new ClassValue<>() {
+			@Override
+			protected Boolean computeValue(Class<?> clazz) {
+				try {
+					return clazz.getMethod("isIgnoredField", ContextualType.class, String.class, Field.class).getDeclaringClass() == DefaultValueGenerator.class
+							&& clazz.getMethod("getImplementationClass", ContextualType.class, String.class).getDeclaringClass() == DefaultValueGenerator.class;
+				} catch (NoSuchMethodException e) {
+					return false;
+				}
+			}
+		};
+		// the decision keys of the classes not overriding the decisions, which then only depend on PRIMITIVE_COLLECTIONS, see getDecisionKey
+		private static final ClassValue<Object[]> DECISION_KEYS = new ClassValue<>() {
+			@Override
+			protected Object[] computeValue(Class<?> clazz) {
+				return new Object[] { new Object(), new Object() };
+			}
+		};
+		// whether a class does not override any of the methods taking a path, which the DefaultValueGenerator ones ignore
+		private static final ClassValue<Boolean> PATH_UNUSED = new ClassValue<>() {
+			@Override
+			protected Boolean computeValue(Class<?> clazz) {
+				try {
+					for (Method method : ValueGenerator.class.getMethods()) {
+						if (List.of(method.getParameterTypes()).contains(String.class)) {
+							Class<?> declaringClass = clazz.getMethod(method.getName(), method.getParameterTypes()).getDeclaringClass();
+							if (declaringClass != DefaultValueGenerator.class && declaringClass != ValueGenerator.class) {
+								return false;
+							}
+						}
+					}
+					return true;
+				} catch (NoSuchMethodException e) {
+					return false;
+				}
+			}
+		};
+		// whether a class draws its collection sizes as DefaultValueGenerator does, uniformly between MIN_COLLECTION_SIZE and MAX_COLLECTION_SIZE
+		private static final ClassValue<Boolean> DEFAULT_COLLECTION_SIZE = new ClassValue<>() {
+			@Override
+			protected Boolean computeValue(Class<?> clazz) {
+				try {
+					Class<?> declaringClass = clazz.getMethod("getCollectionSize", ContextualType.class, String.class).getDeclaringClass();
+					return declaringClass == DefaultValueGenerator.class || declaringClass == SeekableValueGenerator.class;
+				} catch (NoSuchMethodException e) {
+					return false;
+				}
+			}
+		};
+		private static final ClassValue<Boolean> DEFAULT_GENERATE = new ClassValue<>() {
+			@Override
+			protected Boolean computeValue(Class<?> clazz) {
+				try {
+					return clazz.getMethod("generate", ContextualType.class, String.class, CurrentInstanceContext.class).getDeclaringClass() == DefaultValueGenerator.class;
+				} catch (NoSuchMethodException e) {
+					return false;
+				}
+			}
+		};
+
 		public DefaultValueGenerator() {
 			this(new Random());
 		}
@@ -89,6 +210,10 @@ public interface ValueGenerator {
 			return ZoneId.of(zones.get(random.nextInt(zones.size())));
 		}
 
+		private static boolean isEnum(ContextualType<?> type) {
+			return type.getActualClass().isEnum();
+		}
+
 		protected Class<?> randomClass() {
 			List<Class<?>> classes = List.of(int.class, Integer.class, int[].class, Integer[].class, Object.class);
 			return classes.get(random.nextInt(classes.size()));
@@ -97,16 +222,51 @@ public interface ValueGenerator {
 		@Override
 		public boolean isIgnoredField(ContextualType<?> declaringType, String path, Field field) {
 			String packageName = field.getDeclaringClass().getPackageName();
-			return packageName.startsWith("java.") || packageName.startsWith("javax.");
+			return packageName.startsWith("java.") || packageName.startsWith("javax.") || PrimitiveCollection.isInternalField(field);
+		}
+
+		/**
+		 * True unless isIgnoredField or getImplementationClass is overridden. Subclasses whose overrides do not depend on the path may override this to return true.
+		 */
+		@Override
+		public boolean isPathIndependent() {
+			return PATH_INDEPENDENT.get(getClass());
+		}
+
+		/**
+		 * Unless isIgnoredField or getImplementationClass is overridden, the key of the class and PRIMITIVE_COLLECTIONS, so that the decisions are shared by the ValueGenerators of the same class (e.g. one per thread)
+		 * and recomputed when PRIMITIVE_COLLECTIONS changes. IMMUTABLE_COLLECTIONS is not part of these decisions.
+		 */
+		@Override
+		public Object getDecisionKey() {
+			return PATH_INDEPENDENT.get(getClass()) ? DECISION_KEYS.get(getClass())[PRIMITIVE_COLLECTIONS ? 1 : 0] : this;
+		}
+
+		/**
+		 * True if any of the methods taking a path is overridden, e.g. generate by SeekableValueGenerator.
+		 */
+		@Override
+		public boolean isPathUsed() {
+			return !PATH_UNUSED.get(getClass());
 		}
 
 		@Override
 		public Class<?> getImplementationClass(ContextualType<?> type, String path) {
 			Class<?> clazz = type.getActualClass();
-			if (clazz == List.class) return ArrayList.class;
-			if (clazz == Collection.class) return ArrayList.class;
-			if (clazz == Set.class) return LinkedHashSet.class;
-			if (clazz == Map.class) return LinkedHashMap.class;
+			if (clazz == List.class || clazz == Collection.class) {
+				Class<?> itemClass = ((ClassContext<?>) type).getItemType().getActualClass();
+				if (PRIMITIVE_COLLECTIONS && itemClass == Integer.class) return IntArrayList.class;
+				if (PRIMITIVE_COLLECTIONS && itemClass == Long.class) return LongArrayList.class;
+				if (PRIMITIVE_COLLECTIONS && itemClass == Double.class) return DoubleArrayList.class;
+				return ArrayList.class;
+			}
+			if (clazz == Set.class) {
+				ContextualType<?> itemType = ((ClassContext<?>) type).getItemType();
+				if (PRIMITIVE_COLLECTIONS && itemType.getActualClass() == Integer.class) return IntHashSet.class;
+				if (PRIMITIVE_COLLECTIONS && itemType.getActualClass() == Long.class) return LongHashSet.class;
+				return isEnum(itemType) ? EnumSet.class : LinkedHashSet.class;
+			}
+			if (clazz == Map.class) return isEnum(((ClassContext<?>) type).getMapKeyType()) ? EnumMap.class : LinkedHashMap.class;
 			return clazz;
 		}
 
@@ -161,9 +321,234 @@ public interface ValueGenerator {
 			return null;
 		}
 
+		@Override
+		public boolean isImmutableCollection(ContextualType<?> type, String path) {
+			return IMMUTABLE_COLLECTIONS;
+		}
+
+		/**
+		 * Fills the items as generate would generate them, unless generate is overridden, in which case the items are left to it.
+		 */
+		@Override
+		public boolean generateItems(ContextualType<?> itemType, String path, Object items) {
+			if (!DEFAULT_GENERATE.get(getClass())) {
+				return false;
+			}
+			if (items instanceof int[] ints) {
+				for (int i = 0; i < ints.length; i++) {
+					ints[i] = random.nextInt();
+				}
+				return true;
+			}
+			if (items instanceof long[] longs) {
+				for (int i = 0; i < longs.length; i++) {
+					longs[i] = random.nextLong();
+				}
+				return true;
+			}
+			if (items instanceof double[] doubles) {
+				for (int i = 0; i < doubles.length; i++) {
+					doubles[i] = random.nextDouble();
+				}
+				return true;
+			}
+			return false;
+		}
+
 		@Override
 		public int getCollectionSize(ContextualType<?> type, String path) {
 			return MIN_COLLECTION_SIZE + (int)(random.nextDouble() * (MAX_COLLECTION_SIZE - MIN_COLLECTION_SIZE + 1));
 		}
+
+		/**
+		 * The mean of the sizes drawn by getCollectionSize, without drawing from {@link #random}, unless a subclass overrides getCollectionSize.
+		 */
+		@Override
+		public double getExpectedCollectionSize(ContextualType<?> type, String path, int samples) {
+			if (!DEFAULT_COLLECTION_SIZE.get(getClass())) {
+				return ValueGenerator.super.getExpectedCollectionSize(type, path, samples);
+			}
+			return (MIN_COLLECTION_SIZE + MAX_COLLECTION_SIZE) / 2.0;
+		}
+	}
+
+
+	/**
+	 * A DefaultValueGenerator whose randomness is a counter-based function of (seed, instance index, path, draw number) instead of a sequential Random.
+	 * Instance n of a seed is therefore the same no matter which other instances were generated before, and instances can be generated in any order or in parallel (with one generator per thread).
+	 * Subclasses drawing from {@link #random} in an overridden generate or getCollectionSize should call {@link #seek(String, long)} (or the super method) first.
+	 */
+	public static class SeekableValueGenerator extends DefaultValueGenerator {
+
+		private static final long GENERATE = 0x67656e6572617465L;
+		private static final long COLLECTION_SIZE = 0x636f6c6c65637473L;
+
+		private final long seed;
+		private final long index;
+
+		public SeekableValueGenerator(long seed, long index) {
+			super(new CounterRandom());
+			this.seed = seed;
+			this.index = index;
+		}
+
+		/**
+		 * Restart the random sequence at the one determined by the seed, the instance index, the given path and salt.
+		 */
+		protected void seek(String path, long salt) {
+			long hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < path.length(); i++) {
+				hash = (hash ^ path.charAt(i)) * 0x100000001b3L;
+			}
+			((CounterRandom) random).seek(CounterRandom.mix(seed ^ CounterRandom.mix(index ^ CounterRandom.mix(hash ^ salt))));
+		}
+
+		@Override
+		public Object generate(ContextualType<?> type, String path, CurrentInstanceContext currentInstanceContext) throws ReflectiveOperationException {
+			seek(path, GENERATE);
+			return super.generate(type, path, currentInstanceContext);
+		}
+
+		@Override
+		public int getCollectionSize(ContextualType<?> type, String path) {
+			seek(path, COLLECTION_SIZE);
+			return super.getCollectionSize(type, path);
+		}
+
+		/**
+		 * The k-th draw after a seek is the SplitMix64 mix of key + k * golden gamma, so any draw can be computed without the ones before it.
+		 */
+		private static class CounterRandom extends Random {
+			private static final long serialVersionUID = -2581379212315186385L;
+			private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+			private long key;
+			private long counter;
+
+			static long mix(long z) {
+				z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+				z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+				return z ^ (z >>> 31);
+			}
+
+			void seek(long key) {
+				this.key = key;
+				this.counter = 0;
+			}
+
+			@Override
+			protected int next(int bits) {
+				return (int) (mix(key + ++counter * GOLDEN_GAMMA) >>> (64 - bits));
+			}
+		}
+	}
+
+
+	/**
+	 * A ValueGenerator drawing immutable leaf values (Strings, boxed primitives, date/time values and deeply immutable value objects, see {@link ClassContext#isDeeplyImmutable()})
+	 * from a bounded pool per ContextualType: the first values of a type are generated by the wrapped ValueGenerator until its pool reaches the cardinality of the type, after which values are picked from the pool at random.
+	 * Generated instances therefore share their leaf values, which saves heap for large data sets and gives low cardinality columns. Everything else is delegated to the wrapped ValueGenerator,
+	 * including generateItems, so the items of primitive-backed collections are generated in bulk by it and not pooled, as they hold no boxed values to share.
+	 * Like the other ValueGenerators it is not thread-safe, the pools are not synchronized.
+	 */
+	public static class InterningValueGenerator implements ValueGenerator {
+
+		private final ValueGenerator generator;
+		private final int cardinality;
+		private final Random random;
+		private final Map<ContextualType<?>, List<Object>> pools = new HashMap<>();
+
+		/**
+		 * Pool up to the given number of values per type, picking from the pools with the Random of the wrapped ValueGenerator if it is a DefaultValueGenerator.
+		 */
+		public InterningValueGenerator(ValueGenerator generator, int cardinality) {
+			this(generator, cardinality, generator instanceof DefaultValueGenerator theGenerator ? theGenerator.random : new Random());
+		}
+
+		public InterningValueGenerator(ValueGenerator generator, int cardinality, Random random) {
+			this.generator = generator;
+			this.cardinality = cardinality;
+			this.random = random;
+		}
+
+		/**
+		 * The maximum number of distinct values of the given type, 0 to not pool it. Defaults to the cardinality given to the constructor for deeply immutable types,
+		 * which excludes mutable types such as Date that are shared rather than copied by cloning.
+		 */
+		protected int getCardinality(ContextualType<?> type, String path) {
+			Class<?> clazz = type.getActualClass();
+			if (clazz.isPrimitive() || clazz.isEnum() || clazz == Enum.class || clazz == Class.class || clazz == Void.class) {
+				return 0;
+			}
+			return type instanceof ClassContext<?> classType && classType.isDeeplyImmutable() ? cardinality : 0;
+		}
+
+		@Override
+		public Object generate(ContextualType<?> type, String path, CurrentInstanceContext currentInstanceContext) throws ReflectiveOperationException {
+			int typeCardinality = getCardinality(type, path);
+			if (typeCardinality <= 0) {
+				return generator.generate(type, path, currentInstanceContext);
+			}
+			List<Object> pool = pools.computeIfAbsent(type, t -> new ArrayList<>());
+			if (pool.size() >= typeCardinality) {
+				return pool.get(random.nextInt(pool.size()));
+			}
+			Object value = generator.generate(type, path, currentInstanceContext);
+			pool.add(value);
+			return value;
+		}
+
+		@Override
+		public boolean isIgnoredField(ContextualType<?> declaringType, String path, Field field) {
+			return generator.isIgnoredField(declaringType, path, field);
+		}
+
+		@Override
+		public Class<?> getImplementationClass(ContextualType<?> type, String path) {
+			return generator.getImplementationClass(type, path);
+		}
+
+		@Override
+		public Object onRecursion(ContextualType<?> type, String path, List<Object> recursed, CurrentInstanceContext currentInstanceContext) throws ReflectiveOperationException {
+			return generator.onRecursion(type, path, recursed, currentInstanceContext);
+		}
+
+		@Override
+		public int getCollectionSize(ContextualType<?> type, String path) {
+			return generator.getCollectionSize(type, path);
+		}
+
+		@Override
+		public double getExpectedCollectionSize(ContextualType<?> type, String path, int samples) {
+			return generator.getExpectedCollectionSize(type, path, samples);
+		}
+
+		@Override
+		public boolean isImmutableCollection(ContextualType<?> type, String path) {
+			return generator.isImmutableCollection(type, path);
+		}
+
+		@Override
+		public boolean generateItems(ContextualType<?> itemType, String path, Object items) {
+			return generator.generateItems(itemType, path, items);
+		}
+
+		@Override
+		public boolean isPathIndependent() {
+			return generator.isPathIndependent();
+		}
+
+		@Override
+		public Object getDecisionKey() {
+			return generator.getDecisionKey();
+		}
+
+		/**
+		 * Subclasses may override getCardinality, which is given the path.
+		 */
+		@Override
+		public boolean isPathUsed() {
+			return generator.isPathUsed() || getClass() != InterningValueGenerator.class;
+		}
 	}
 }
@@ -7,21 +7,58 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
+import util.reflect.ClassUtil.CloneOptions;
+import util.reflect.ClassUtil.CloneOptions.DefaultCloneOptions;
 import util.reflect.ClassUtil.TypeReference;
 import util.reflect.ValueGenerator.DefaultValueGenerator;
 
@@ -259,4 +296,414 @@ public class ClassUtilTest {
 		assertTrue(instance != clone);
 		assertTrue(clone.myClassRef == clone);
 	}
+
+
+	@GenerateAccessor
+	@EqualsAndHashCode
+	static class AccessorPojo {
+		int anInt;
+		String aString;
+		List<String> aList;
+		private Double aPrivateDouble;
+	}
+
+	@Test
+	public void generatedAccessorTest() throws ReflectiveOperationException {
+		assertNotNull(ClassUtil.getAccessor(AccessorPojo.class));
+
+		AccessorPojo instance = ClassUtil.analyze(AccessorPojo.class).randomInstance();
+		assertNotNull(instance.aString);
+		assertNotNull(instance.aList.get(0));
+		assertNotNull(instance.aPrivateDouble);
+
+		assertClone(instance, ClassUtil.deepClone(instance));
+		assertTrue(instance.aList != ClassUtil.deepClone(instance).aList);
+	}
+
+	/**
+	 * Load the analysis cache file in a new class loader, in which nothing has been analyzed yet.
+	 * Return the number of restored entries, and whether the interned ClassContext of the given class has its field types without computing them.
+	 */
+	private static Object[] loadInNewClassLoader(Path file, Class<?> clazz) throws Exception {
+		List<URL> urls = new ArrayList<>();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			urls.add(Path.of(entry).toUri().toURL());
+		}
+		Thread thread = Thread.currentThread();
+		ClassLoader contextClassLoader = thread.getContextClassLoader();
+		try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader())) {
+			thread.setContextClassLoader(loader);
+			int restored = (int) loader.loadClass(AnalysisCache.class.getName()).getMethod("load", Path.class).invoke(null, file);
+			Object context = loader.loadClass(ClassUtil.class.getName()).getMethod("analyze", Class.class).invoke(null, loader.loadClass(clazz.getName()));
+			Object interned = context.getClass().getMethod("intern").invoke(context);
+			Method getComputedFieldTypes = interned.getClass().getDeclaredMethod("getComputedFieldTypes");
+			getComputedFieldTypes.setAccessible(true);
+			return new Object[] { restored, getComputedFieldTypes.invoke(interned) != null };
+		} finally {
+			thread.setContextClassLoader(contextClassLoader);
+		}
+	}
+
+	@Test
+	public void analysisCacheSaveAndLoadTest() throws Exception {
+		ClassContext<Map<String, List<? extends MyItem>>> classContext = ClassUtil.analyze(new TypeReference<Map<String, List<? extends MyItem>>>() {});
+		classContext.intern().randomInstance();
+		ClassUtil.analyze(Outer.Middle.Inner.class).intern().randomInstance();
+
+		Path file = Files.createTempFile("analysis", ".cache");
+		try {
+			AnalysisCache.save(file);
+			assertTrue(classContext.intern() == ClassUtil.analyze(new TypeReference<Map<String, List<? extends MyItem>>>() {}));
+
+			// restored in a new class loader, without analyzing anything
+			Object[] restored = loadInNewClassLoader(file, MyItem.class);
+			assertTrue((int) restored[0] > 0);
+			assertEquals(true, restored[1]);
+
+			// a changed class file size or modification time makes the entries referencing the class stale
+			byte[] bytes = Files.readAllBytes(file);
+			byte[] name = MyItem.class.getName().getBytes(StandardCharsets.UTF_8);
+			int identity = indexOf(bytes, name) + name.length + 2;
+			assertEquals("file ", new String(bytes, identity, 5, StandardCharsets.UTF_8));
+			bytes[identity + 5] = (byte) (bytes[identity + 5] == '1' ? '2' : '1');
+			Files.write(file, bytes);
+			Object[] stale = loadInNewClassLoader(file, MyItem.class);
+			assertTrue((int) stale[0] > 0 && (int) stale[0] < (int) restored[0]);
+			assertEquals(false, stale[1]);
+
+			Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			assertEquals(0, AnalysisCache.load(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static int indexOf(byte[] bytes, byte[] part) {
+		for (int i = 0; i + part.length <= bytes.length; i++) {
+			if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static class JfrPojo {
+		List<String> strings;
+		int[] ints;
+	}
+
+	@Test
+	public void jfrEventsTest() throws ReflectiveOperationException, IOException {
+		Path file = Files.createTempFile("jfr-events", ".jfr");
+		JfrPojo instance;
+		try {
+			try (Recording recording = new Recording()) {
+				for (Class<? extends Event> eventClass : List.of(JfrEvents.AnalyzeEvent.class, JfrEvents.ComputeConstructorEvent.class, JfrEvents.ComputeFieldsEvent.class,
+						JfrEvents.RandomInstanceEvent.class, JfrEvents.DeepCloneEvent.class, JfrEvents.InferEvent.class)) {
+					recording.enable(eventClass).withThreshold(Duration.ZERO);
+				}
+				recording.start();
+				ClassContext<JfrPojo> classContext = ClassUtil.analyze(JfrPojo.class);
+				instance = classContext.randomInstance();
+				ClassUtil.deepClone(instance);
+				InferUtil.infer(ArrayList.class, ClassUtil.analyze(new TypeReference<List<String>>() {}));
+				recording.stop();
+				recording.dump(file);
+			}
+
+			Map<String, List<RecordedEvent>> events = RecordingFile.readAllEvents(file).stream()
+					.collect(Collectors.groupingBy(event -> event.getEventType().getName()));
+			assertTrue(events.get("util.reflect.Analyze").stream().anyMatch(event -> event.getString("type").equals(JfrPojo.class.getName())));
+			assertTrue(events.get("util.reflect.ComputeFields").stream().anyMatch(event -> event.getInt("fieldCount") == 2));
+			assertTrue(events.containsKey("util.reflect.ComputeConstructor"));
+			assertTrue(events.get("util.reflect.Infer").stream().anyMatch(event -> event.getBoolean("success")));
+			RecordedEvent randomInstanceEvent = events.get("util.reflect.RandomInstance").get(0);
+			assertEquals(JfrPojo.class.getName() + " {}", randomInstanceEvent.getString("rootType"));
+			assertEquals(3 + instance.strings.size() + instance.ints.length, randomInstanceEvent.getLong("nodeCount"));
+			assertEquals(3, events.get("util.reflect.DeepClone").get(0).getLong("nodeCount"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void metricsMXBeanTest() throws ReflectiveOperationException, JMException {
+		ClassContext<JfrPojo> classContext = ClassUtil.analyze(JfrPojo.class);
+		MetricsMXBean metrics = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName(Metrics.OBJECT_NAME), MetricsMXBean.class);
+		String rootType = classContext.toString();
+		long generations = metrics.getGenerationCounts().getOrDefault(rootType, 0L);
+		long clones = metrics.getCloneCounts().getOrDefault(JfrPojo.class.getName(), 0L);
+		long hits = metrics.getClassContextCacheHits();
+
+		JfrPojo instance = classContext.randomInstance();
+		ClassUtil.deepClone(instance);
+		ClassUtil.analyze(String.class);
+
+		assertEquals(generations + 1, (long) metrics.getGenerationCounts().get(rootType));
+		assertEquals(clones + 1, (long) metrics.getCloneCounts().get(JfrPojo.class.getName()));
+		assertEquals(65, metrics.getGenerationLatencyHistograms().get(rootType).length);
+		assertTrue(metrics.getGenerationNodeCounts().get(rootType) >= 3);
+		assertTrue(metrics.getClassContextCacheHits() > hits);
+		assertTrue(metrics.getClassContextCacheSize() > 0);
+		assertTrue(metrics.getClassContextCacheHitRatio() > 0);
+	}
+
+	@Test
+	public void contextualTypeEqualityTest() {
+		ClassContext<List<Integer>> first = ClassUtil.analyze(new TypeReference<List<Integer>>() {});
+		ClassContext<List<Integer>> second = ClassUtil.analyze(new TypeReference<List<Integer>>() {});
+		ArrayContext<List<Integer>[]> firstArray = ClassUtil.analyze(new TypeReference<List<Integer>[]>() {});
+		ArrayContext<List<Integer>[]> secondArray = ClassUtil.analyze(new TypeReference<List<Integer>[]>() {});
+		assertTrue(first != second);
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertEquals(firstArray, secondArray);
+		assertEquals(firstArray.hashCode(), secondArray.hashCode());
+		assertNotEquals(first, ClassUtil.analyze(new TypeReference<List<Long>>() {}));
+
+		ClassContext<List<Integer>> interned = first.intern();
+		assertTrue(interned == second.intern());
+		assertEquals(interned, second);
+		assertEquals(second, interned);
+		assertTrue(firstArray.intern() == secondArray.intern());
+		assertNotEquals(interned, ClassUtil.analyze(new TypeReference<List<Long>>() {}).intern());
+	}
+
+	@Test
+	public void deepEqualsTest() throws ReflectiveOperationException {
+		Outer.Middle.Inner instance = ClassUtil.analyze(Outer.Middle.Inner.class).randomInstance();
+		instance.myClassRef = instance;
+		Outer.Middle.Inner clone = ClassUtil.deepClone(instance);
+
+		assertTrue(ClassUtil.deepEquals(instance, clone));
+		assertEquals(ClassUtil.deepHashCode(instance), ClassUtil.deepHashCode(clone));
+		assertEquals(List.of(), ClassUtil.diff(instance, clone));
+		// primitive arrays and classes are hashed by value and by name, the same in every JVM
+		int[] ints = { 3, -1, 7 };
+		assertEquals(31 * "[I".hashCode() + Arrays.hashCode(ints), ClassUtil.deepHashCode(ints));
+
+		clone.anInt++;
+		clone.aDoubleArray[0] = -1.;
+		clone.aMap.values().iterator().next().uuid = "changed";
+		clone.getMiddle().middle = "changed";
+		assertTrue(!ClassUtil.deepEquals(instance, clone));
+		assertEquals(List.of("middle", "anInt", "aDoubleArray[0]", "aMap[0][:value].uuid"), ClassUtil.diff(instance, clone));
+
+		clone = ClassUtil.deepClone(instance);
+		clone.myClassRef = ClassUtil.deepClone(instance);
+		assertEquals(List.of("myClassRef"), ClassUtil.diff(instance, clone));
+
+		assertTrue(ClassUtil.deepEquals(new LinkedHashSet<>(List.of(List.of(1), List.of(2))), new LinkedHashSet<>(List.of(List.of(2), List.of(1)))));
+		assertEquals(List.of("[0][:key]"), ClassUtil.diff(Map.of(1, "a"), Map.of(2, "a")));
+	}
+
+	@Test
+	public void deepCopyIntoTest() throws ReflectiveOperationException {
+		Outer.Middle.Inner source = ClassUtil.analyze(Outer.Middle.Inner.class).randomInstance();
+		Outer.Middle.Inner target = ClassUtil.analyze(Outer.Middle.Inner.class).randomInstance();
+		target.aList.add(new MyItem());
+		List<MyItem> targetList = target.aList;
+		MyItem targetItem = target.aList.get(0);
+		float[] targetFloats = target.aPrimitiveFloatArray = new float[source.aPrimitiveFloatArray.length];
+		Outer targetOuter = target.getOuter();
+
+		assertTrue(ClassUtil.deepCopyInto(source, target) == target);
+		assertTrue(ClassUtil.deepEquals(source, target));
+		assertTrue(target.aList == targetList);
+		assertTrue(target.aList.get(0) == targetItem);
+		assertTrue(target.aPrimitiveFloatArray == targetFloats);
+		assertTrue(target.getOuter() == targetOuter);
+		assertTrue(target.aList != source.aList);
+
+		source.aMap.values().iterator().next().uuid = "changed";
+		source.anInt++;
+		Map<String, MyItem> targetMap = target.aMap;
+		ClassUtil.deepCopyInto(source, target);
+		assertTrue(ClassUtil.deepEquals(source, target));
+		assertTrue(target.aMap == targetMap);
+	}
+
+	private static class SetItem {
+		int value;
+
+		SetItem(int value) {
+			this.value = value;
+		}
+	}
+
+	private static class SetRoot {
+		Set<SetItem> set = new HashSet<>();
+		Map<SetItem, String> map = new HashMap<>();
+		SetItem other;
+	}
+
+	@Test
+	public void deepCopyIntoSetTest() throws ReflectiveOperationException {
+		SetRoot source = new SetRoot();
+		SetItem shared = new SetItem(1);
+		SetItem changed = new SetItem(2);
+		source.set.add(shared);
+		source.set.add(changed);
+		source.map.put(shared, "a");
+		source.other = shared;
+		SetRoot target = ClassUtil.deepClone(source);
+		Set<SetItem> targetItems = Collections.newSetFromMap(new IdentityHashMap<>());
+		targetItems.addAll(target.set);
+		SetItem targetShared = target.other;
+
+		// the set items and map keys are matched, not cloned, and stay shared with the other field
+		assertTrue(ClassUtil.deepCopyInto(source, target) == target);
+		assertTrue(ClassUtil.deepEquals(source, target));
+		assertTrue(target.other == targetShared);
+		assertTrue(targetItems.containsAll(target.set) && target.set.size() == 2);
+		assertTrue(target.map.keySet().iterator().next() == targetShared);
+
+		changed.value = 3;
+		ClassUtil.deepCopyInto(source, target);
+		assertTrue(ClassUtil.deepEquals(source, target));
+		assertTrue(target.other == targetShared);
+		assertTrue(target.set.contains(targetShared));
+		assertTrue(target.map.keySet().iterator().next() == targetShared);
+	}
+
+	@Test
+	public void cacheableCloneOptionsTest() throws ReflectiveOperationException {
+		AtomicInteger decisions = new AtomicInteger();
+		CloneOptions options = new DefaultCloneOptions() {
+			@Override
+			public boolean isReassignable(Class<?> clazz) {
+				decisions.incrementAndGet();
+				return super.isReassignable(clazz);
+			}
+			@Override
+			public boolean isIgnoredField(Field field) {
+				decisions.incrementAndGet();
+				return super.isIgnoredField(field);
+			}
+		};
+		Outer.Middle.Inner instance = ClassUtil.analyze(Outer.Middle.Inner.class).randomInstance();
+		assertClone(instance, ClassUtil.deepClone(instance, options));
+		int firstCloneDecisions = decisions.get();
+		assertTrue(firstCloneDecisions > 0);
+
+		Outer.Middle.Inner clone = ClassUtil.deepClone(instance, options);
+		assertClone(instance, clone);
+		assertTrue(ClassUtil.deepEquals(instance, clone, options));
+		assertEquals(firstCloneDecisions, decisions.get());
+	}
+
+	private static class UnmodifiableViews {
+		SortedSet<String> sortedSet;
+		NavigableMap<String, List<String>> navigableMap;
+		List<String> linkedList = Collections.unmodifiableList(new LinkedList<>(List.of("c", "a", "b")));
+		Set<String> orderedSet = Collections.unmodifiableSet(new LinkedHashSet<>(List.of("c", "a", "b")));
+		List<String> immutableList = List.of("x", "y");
+	}
+
+	@Test
+	public void unmodifiableViewCloneTest() throws ReflectiveOperationException {
+		TreeSet<String> backingSet = new TreeSet<>(Comparator.reverseOrder());
+		backingSet.addAll(List.of("a", "c", "b"));
+		TreeMap<String, List<String>> backingMap = new TreeMap<>(Comparator.reverseOrder());
+		backingMap.put("a", new ArrayList<>(List.of("1")));
+		backingMap.put("b", new ArrayList<>(List.of("2")));
+		UnmodifiableViews views = new UnmodifiableViews();
+		views.sortedSet = Collections.unmodifiableSortedSet(backingSet);
+		views.navigableMap = Collections.unmodifiableNavigableMap(backingMap);
+
+		UnmodifiableViews clone = ClassUtil.deepClone(views);
+		assertEquals(views.sortedSet.getClass(), clone.sortedSet.getClass());
+		assertEquals(views.navigableMap.getClass(), clone.navigableMap.getClass());
+		assertEquals(views.linkedList.getClass(), clone.linkedList.getClass());
+		assertEquals(views.orderedSet.getClass(), clone.orderedSet.getClass());
+		assertEquals(List.of("c", "b", "a"), new ArrayList<>(clone.sortedSet));
+		assertEquals(List.of("b", "a"), new ArrayList<>(clone.navigableMap.keySet()));
+		assertEquals(List.of("c", "a", "b"), new ArrayList<>(clone.orderedSet));
+		assertTrue(clone.navigableMap.get("a") != views.navigableMap.get("a"));
+		assertTrue(ClassUtil.deepEquals(views, clone));
+
+		// views of mutable collections are copied, immutable collections are shared
+		SortedSet<String> shallowSet = ClassUtil.shallowClone(views.sortedSet);
+		assertTrue(shallowSet != views.sortedSet);
+		assertEquals(views.sortedSet.getClass(), shallowSet.getClass());
+		backingSet.add("d");
+		assertEquals(3, shallowSet.size());
+		assertTrue(ClassUtil.shallowClone(views.immutableList) == views.immutableList);
+	}
+
+	private static final class Money {
+		private final long amount;
+		private final String currency;
+		private final Money converted;
+
+		Money(long amount, String currency, Money converted) {
+			this.amount = amount;
+			this.currency = currency;
+			this.converted = converted;
+		}
+	}
+
+	private static final class Basket {
+		private final List<Money> prices;
+
+		Basket(List<Money> prices) {
+			this.prices = prices;
+		}
+	}
+
+	private static class Order {
+		Money total;
+		Basket basket;
+	}
+
+	@Test
+	public void deeplyImmutableTest() throws ReflectiveOperationException {
+		assertTrue(ClassUtil.<Money, ClassContext<Money>>analyze(Money.class).isDeeplyImmutable());
+		assertTrue(!ClassUtil.<Basket, ClassContext<Basket>>analyze(Basket.class).isDeeplyImmutable());
+		assertTrue(!ClassUtil.<Order, ClassContext<Order>>analyze(Order.class).isDeeplyImmutable());
+		assertTrue(ClassUtil.isKnownImmutable(String.class));
+		assertTrue(!ClassUtil.isKnownImmutable(Money.class));
+
+		Order order = new Order();
+		order.total = new Money(100, "EUR", new Money(120, "USD", null));
+		order.basket = new Basket(new ArrayList<>(List.of(order.total)));
+		Order clone = ClassUtil.deepClone(order);
+		assertTrue(clone.total == order.total);
+		assertTrue(clone.basket != order.basket);
+		assertTrue(clone.basket.prices.get(0) == order.total);
+
+		Order copy = ClassUtil.deepClone(order, new DefaultCloneOptions() {
+			@Override
+			protected boolean isDeeplyImmutable(Class<?> clazz) {
+				return false;
+			}
+		});
+		assertTrue(copy.total != order.total);
+		assertTrue(ClassUtil.deepEquals(order, copy));
+
+		// the Money shared by the clone is replaced, not changed, by the in place operations
+		Order other = new Order();
+		other.total = new Money(5, "GBP", null);
+		other.basket = new Basket(new ArrayList<>());
+		assertTrue(ClassUtil.deepCopyInto(other, clone, new DefaultCloneOptions() {
+			@Override
+			protected boolean isDeeplyImmutable(Class<?> clazz) {
+				return false;
+			}
+		}) == clone);
+		assertTrue(clone.total != order.total && clone.total.amount == 5);
+		assertEquals(100, order.total.amount);
+		assertEquals("EUR", order.total.currency);
+
+		Order mutated = ClassUtil.deepClone(order);
+		ClassContext<Order> orderContext = ClassUtil.analyze(Order.class);
+		DefaultValueGenerator generator = new DefaultValueGenerator();
+		for (int i = 0; i < 20; i++) {
+			orderContext.mutate(mutated, generator, 1);
+		}
+		assertEquals(100, order.total.amount);
+		assertEquals("EUR", order.total.currency);
+		assertEquals(120, order.total.converted.amount);
+		assertTrue(order.basket.prices.get(0) == order.total);
+	}
 }
@@ -0,0 +1,120 @@
+package util.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import util.reflect.ValueGenerator.DefaultValueGenerator;
+
+public class PrefetchingPublisherTest {
+
+	private static class Payload {
+		String name;
+		List<Integer> numbers;
+	}
+
+	@Test
+	public void takeTest() throws InterruptedException {
+		ClassContext<Payload> classContext = ClassUtil.analyze(Payload.class);
+		try (PrefetchingPublisher<Payload> publisher = new PrefetchingPublisher<>(classContext, () -> new DefaultValueGenerator(new Random(0)), 8, 2)) {
+			for (int i = 0; i < 100; i++) {
+				Payload payload = publisher.take();
+				assertNotNull(payload.name);
+				assertTrue(payload.numbers.size() >= 3);
+			}
+		}
+	}
+
+	@Test
+	public void subscribeTest() throws InterruptedException {
+		ClassContext<Payload> classContext = ClassUtil.analyze(Payload.class);
+		List<Payload> received = new CopyOnWriteArrayList<>();
+		CountDownLatch firstBatch = new CountDownLatch(5);
+		CountDownLatch beyondDemand = new CountDownLatch(6);
+		CountDownLatch completed = new CountDownLatch(1);
+		Flow.Subscription[] subscription = new Flow.Subscription[1];
+		PrefetchingPublisher<Payload> publisher = new PrefetchingPublisher<>(classContext, DefaultValueGenerator::new, 4, 1);
+		publisher.subscribe(new Flow.Subscriber<Payload>() {
+			@Override
+			public void onSubscribe(Flow.Subscription theSubscription) {
+				subscription[0] = theSubscription;
+				theSubscription.request(5);
+			}
+			@Override
+			public void onNext(Payload item) {
+				received.add(item);
+				firstBatch.countDown();
+				beyondDemand.countDown();
+			}
+			@Override
+			public void onError(Throwable throwable) {
+				fail(throwable.toString());
+			}
+			@Override
+			public void onComplete() {
+				completed.countDown();
+			}
+		});
+
+		assertTrue(firstBatch.await(10, TimeUnit.SECONDS));
+		// no more than the demand is delivered
+		assertFalse(beyondDemand.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(5, received.size());
+
+		publisher.close();
+		subscription[0].request(Long.MAX_VALUE);
+		assertTrue(completed.await(10, TimeUnit.SECONDS));
+		// the buffered instances are delivered before completion
+		assertTrue(received.size() >= 5 && received.size() <= 5 + 4 + 1);
+	}
+
+	private static class ConcurrentPayload {
+		Map<String, List<Integer>> map;
+		Set<Collection<String>> sets;
+		Payload[] payloads;
+	}
+
+	@Test
+	public void concurrentWorkersTest() throws InterruptedException {
+		// a type not analyzed yet, shared by many workers
+		ClassContext<ConcurrentPayload> classContext = ClassUtil.analyze(ConcurrentPayload.class);
+		try (PrefetchingPublisher<ConcurrentPayload> publisher = new PrefetchingPublisher<>(classContext, DefaultValueGenerator::new, 64, 16)) {
+			for (int i = 0; i < 200; i++) {
+				ConcurrentPayload payload = publisher.take();
+				assertTrue(payload.map.size() >= 3);
+				assertNotNull(payload.payloads[0].name);
+			}
+		}
+	}
+
+	@Test
+	public void failureTest() throws InterruptedException {
+		ClassContext<Payload> classContext = ClassUtil.analyze(Payload.class);
+		PrefetchingPublisher<Payload> publisher = new PrefetchingPublisher<>(classContext, () -> new DefaultValueGenerator() {
+			@Override
+			public int getCollectionSize(ContextualType<?> type, String path) {
+				throw new IllegalStateException("broken");
+			}
+		}, 4, 1);
+		try {
+			publisher.take();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("broken", e.getCause().getMessage());
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package util.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * The same checks for all the PrimitiveCollection implementations, against the boxed java.util collection they replace.
+ */
+@RunWith(Parameterized.class)
+public class PrimitiveCollectionsTest {
+
+	private final Supplier<Collection<Object>> factory;
+	private final Supplier<Collection<Object>> referenceFactory;
+	private final IntFunction<Object> toItem;
+
+	@SuppressWarnings("unchecked")
+	public PrimitiveCollectionsTest(String name, Supplier<? extends Collection<?>> factory, Supplier<? extends Collection<?>> referenceFactory, IntFunction<Object> toItem) {
+		this.factory = (Supplier<Collection<Object>>) factory;
+		this.referenceFactory = (Supplier<Collection<Object>>) referenceFactory;
+		this.toItem = toItem;
+	}
+
+	@Parameters(name = "{0}")
+	public static List<Object[]> parameters() {
+		IntFunction<Object> toInteger = i -> i;
+		IntFunction<Object> toLong = i -> i * 1_000_000_007L;
+		IntFunction<Object> toDouble = i -> i / 4.0;
+		return List.of(
+				new Object[] { "IntArrayList", (Supplier<?>) IntArrayList::new, (Supplier<?>) ArrayList::new, toInteger },
+				new Object[] { "LongArrayList", (Supplier<?>) LongArrayList::new, (Supplier<?>) ArrayList::new, toLong },
+				new Object[] { "DoubleArrayList", (Supplier<?>) DoubleArrayList::new, (Supplier<?>) ArrayList::new, toDouble },
+				new Object[] { "IntHashSet", (Supplier<?>) IntHashSet::new, (Supplier<?>) HashSet::new, toInteger },
+				new Object[] { "LongHashSet", (Supplier<?>) LongHashSet::new, (Supplier<?>) HashSet::new, toLong });
+	}
+
+	private Object randomItem(Random random) {
+		// a small range, including 0 and negative items, so that items collide and are removed again
+		return toItem.apply(random.nextInt(64) - 8);
+	}
+
+	private Object primitiveItems(int... items) {
+		Class<?> primitiveClass = ((PrimitiveCollection) factory.get()).getPrimitiveClass();
+		Object array = Array.newInstance(primitiveClass, items.length);
+		for (int i = 0; i < items.length; i++) {
+			Array.set(array, i, toItem.apply(items[i]));
+		}
+		return array;
+	}
+
+	@Test
+	public void randomOperationsTest() {
+		Collection<Object> collection = factory.get();
+		Collection<Object> expected = referenceFactory.get();
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			Object item = randomItem(random);
+			assertEquals(expected.add(item), collection.add(item));
+			if (random.nextInt(3) == 0) {
+				Object removed = randomItem(random);
+				assertEquals(expected.remove(removed), collection.remove(removed));
+			}
+			if (collection instanceof List<Object> list && random.nextInt(5) == 0 && !list.isEmpty()) {
+				int index = random.nextInt(list.size());
+				Object item2 = randomItem(random);
+				assertEquals(((List<Object>) expected).set(index, item2), list.set(index, item2));
+				int removedIndex = random.nextInt(list.size());
+				assertEquals(((List<Object>) expected).remove(removedIndex), list.remove(removedIndex));
+				((List<Object>) expected).add(index, item2);
+				list.add(index, item2);
+			}
+			Object contained = randomItem(random);
+			assertEquals(expected.contains(contained), collection.contains(contained));
+			assertEquals(expected.size(), collection.size());
+		}
+		assertEquals(expected, collection);
+		assertEquals(collection, expected);
+		assertEquals(expected.hashCode(), collection.hashCode());
+		assertFalse(collection.contains(null));
+		assertFalse(collection.contains("0"));
+
+		collection.clear();
+		expected.clear();
+		assertEquals(expected, collection);
+		assertTrue(collection.add(toItem.apply(0)));
+		assertTrue(collection.contains(toItem.apply(0)));
+	}
+
+	@Test
+	public void iteratorRemoveTest() {
+		Collection<Object> collection = factory.get();
+		Collection<Object> expected = referenceFactory.get();
+		Random random = new Random(2);
+		for (int i = 0; i < 500; i++) {
+			Object item = randomItem(random);
+			expected.add(item);
+			collection.add(item);
+		}
+		List<Object> iterated = new ArrayList<>();
+		collection.forEach(iterated::add);
+		assertEquals(expected.size(), iterated.size());
+		assertEquals(new HashSet<>(expected), new HashSet<>(iterated));
+
+		collection.removeIf(item -> item.hashCode() % 3 == 0);
+		expected.removeIf(item -> item.hashCode() % 3 == 0);
+		assertEquals(expected, collection);
+
+		Iterator<Object> iterator = collection.iterator();
+		assertThrows(IllegalStateException.class, iterator::remove);
+		iterator.next();
+		iterator.remove();
+		assertThrows(IllegalStateException.class, iterator::remove);
+		assertEquals(expected.size() - 1, collection.size());
+
+		for (iterator = collection.iterator(); iterator.hasNext();) {
+			iterator.next();
+			iterator.remove();
+		}
+		assertTrue(collection.isEmpty());
+		assertFalse(collection.iterator().hasNext());
+	}
+
+	@Test
+	public void concurrentModificationTest() {
+		Collection<Object> collection = factory.get();
+		for (int i = 1; i <= 10; i++) {
+			collection.add(toItem.apply(i));
+		}
+		Iterator<Object> iterator = collection.iterator();
+		iterator.next();
+		collection.add(toItem.apply(11));
+		assertThrows(ConcurrentModificationException.class, iterator::next);
+
+		iterator = collection.iterator();
+		iterator.next();
+		collection.remove(toItem.apply(11));
+		assertThrows(ConcurrentModificationException.class, iterator::next);
+
+		iterator = collection.iterator();
+		iterator.next();
+		collection.clear();
+		assertThrows(ConcurrentModificationException.class, iterator::next);
+
+		// forEach iterates with an iterator, so adding from it fails as well
+		collection.add(toItem.apply(1));
+		Collection<Object> modified = collection;
+		assertThrows(ConcurrentModificationException.class, () -> {
+			for (Object item : modified) {
+				modified.add(toItem.apply(item.hashCode() + 100));
+			}
+		});
+	}
+
+	@Test
+	public void setItemsTest() {
+		Collection<Object> collection = factory.get();
+		collection.add(toItem.apply(42));
+		int[] items = { 3, 0, -1, 3, 7, 0 };
+		((PrimitiveCollection) collection).setItems(primitiveItems(items));
+
+		// a list keeps all the items, a set drops the duplicates as the boxed set does
+		Collection<Object> expected = referenceFactory.get();
+		for (int item : items) {
+			expected.add(toItem.apply(item));
+		}
+		assertEquals(expected, collection);
+		assertEquals(expected.size(), collection.size());
+		assertFalse(collection.contains(toItem.apply(42)));
+
+		assertTrue(collection.add(toItem.apply(42)));
+		expected.add(toItem.apply(42));
+		assertEquals(expected, collection);
+	}
+
+	@Test
+	public void deepCloneTest() throws ReflectiveOperationException {
+		Collection<Object> collection = factory.get();
+		for (int i = -3; i < 20; i++) {
+			collection.add(toItem.apply(i));
+		}
+		Collection<Object> clone = ClassUtil.deepClone(collection);
+		assertEquals(collection.getClass(), clone.getClass());
+		assertEquals(collection, clone);
+		clone.remove(toItem.apply(0));
+		assertTrue(collection.contains(toItem.apply(0)));
+	}
+}
@@ -2,26 +2,45 @@ package util.reflect;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.junit.Test;
 
 import lombok.RequiredArgsConstructor;
 import util.reflect.ClassUtil.TypeReference;
 import util.reflect.ValueGenerator.DefaultValueGenerator;
+import util.reflect.ValueGenerator.InterningValueGenerator;
+import util.reflect.ValueGenerator.SeekableValueGenerator;
 
 public class RandomInstanceTest {
 
@@ -209,4 +228,719 @@ public class RandomInstanceTest {
 		assertNull(instance.infinite.infinite.infinite.infinite);
 		assertNull(instance.infinite.infinite.infinite.field);
 	}
+
+
+	private static class RecordingVisitor implements GenerationVisitor {
+		final List<String> events = new ArrayList<>();
+		final Map<String, Object> values = new LinkedHashMap<>();
+		public void beginObject(ContextualType<?> type, String path) { events.add("{"); }
+		public void field(Field field) { events.add(field.getName()); }
+		public void endObject() { events.add("}"); }
+		public void beginCollection(ContextualType<?> type, String path, int size) { events.add("[" + size); }
+		public void endCollection() { events.add("]"); }
+		public void beginMap(ContextualType<?> type, String path, int size) { events.add("<" + size); }
+		public void mapKey() { events.add("key"); }
+		public void mapValue() { events.add("value"); }
+		public void endMap() { events.add(">"); }
+		public void value(ContextualType<?> type, String path, Object value) { events.add("=" + path); values.put(path, value); }
+	}
+
+	@Test
+	public void generateEventsFollowRandomInstanceTest() throws ReflectiveOperationException {
+		ClassContext<ElementClass> classContext = ClassUtil.analyze(ElementClass.class);
+		ElementClass instance = classContext.randomInstance(new DefaultValueGenerator(new Random(0)));
+		RecordingVisitor visitor = new RecordingVisitor();
+		classContext.generate(new DefaultValueGenerator(new Random(0)), visitor);
+
+		assertEquals(instance.intField, visitor.values.get("intField"));
+		assertEquals(instance.doubleArray.length, visitor.values.keySet().stream().filter(path -> path.startsWith("doubleArray[")).count());
+		assertEquals(instance.doubleArray[0], visitor.values.get("doubleArray[0]"));
+		assertEquals(instance.stringField, visitor.values.get("stringField"));
+		assertEquals(instance.myEnum, visitor.values.get("myEnum"));
+		assertEquals(instance.myOtherEnum, visitor.values.get("myOtherEnum"));
+	}
+
+	@Test
+	public void generateEventsTest() throws ReflectiveOperationException {
+		ClassContext<TestClass<String, Chicken>> classContext = ClassUtil.analyze(new TypeReference<>() {});
+		RecordingVisitor visitor = new RecordingVisitor();
+		classContext.generate(new DefaultValueGenerator() {
+			@Override
+			public boolean isIgnoredField(ContextualType<?> declaringType, String path, Field field) {
+				return field.getName().equals("name") || super.isIgnoredField(declaringType, path, field);
+			}
+			@Override
+			public int getCollectionSize(ContextualType<?> type, String path) {
+				return 1;
+			}
+		}, visitor);
+
+		assertEquals(List.of(
+				"{",
+				"theMap", "<1", "key", "[1", "[1", "=theMap[0][:key][0][0]", "]", "]",
+				"value", "{", "egg", "{", "chicken", "=theMap[0][:value].egg.chicken", "}", "}", ">",
+				"theList", "[1", "[1", "{", "egg", "{", "chicken", "=theList[0][0].egg.chicken", "}", "}", "]", "]",
+				"}"), visitor.events);
+		assertNull(visitor.values.get("theList[0][0].egg.chicken"));
+	}
+
+	@Test
+	public void seekableRandomInstanceTest() throws ReflectiveOperationException {
+		ClassContext<TestClass<String, ElementClass>> classContext = ClassUtil.analyze(new TypeReference<>() {});
+		TestClass<String, ElementClass> instance5 = classContext.randomInstance(42, 5);
+		classContext.randomInstance(42, 6);
+		TestClass<String, ElementClass> instance5Again = classContext.randomInstance(42, 5);
+		TestClass<String, ElementClass> instance6 = classContext.randomInstance(42, 6);
+		TestClass<String, ElementClass> otherSeed = classContext.randomInstance(43, 5);
+
+		assertEquals(instance5.theList.size(), instance5Again.theList.size());
+		assertEquals(instance5.theList.get(0)[0].intField, instance5Again.theList.get(0)[0].intField);
+		assertArrayEquals(instance5.theList.get(0)[0].doubleArray, instance5Again.theList.get(0)[0].doubleArray);
+		assertEquals(instance5.theList.get(1)[0].stringField, instance5Again.theList.get(1)[0].stringField);
+		assertEquals(instance5.theMap.keySet(), instance5Again.theMap.keySet());
+
+		assertNotEquals(instance5.theList.get(0)[0].stringField, instance6.theList.get(0)[0].stringField);
+		assertNotEquals(instance5.theList.get(0)[0].stringField, otherSeed.theList.get(0)[0].stringField);
+	}
+
+	@Test
+	public void randomizeIntoTest() throws ReflectiveOperationException {
+		ValueGenerator generator = new DefaultValueGenerator(new Random(0)) {
+			{
+				MIN_COLLECTION_SIZE = 3;
+				MAX_COLLECTION_SIZE = 3;
+			}
+		};
+		ClassContext<TestClass<String, ElementClass>> classContext = ClassUtil.analyze(new TypeReference<>() {});
+		TestClass<String, ElementClass> instance = classContext.randomInstance(generator);
+		List<ElementClass[]> theList = instance.theList;
+		Map<List<? extends List<String>>, ElementClass> theMap = instance.theMap;
+		ElementClass[] array = theList.get(0);
+		ElementClass element = array[0];
+		Double[] doubleArray = element.doubleArray;
+		Double[] doubles = doubleArray.clone();
+		String stringField = element.stringField;
+		theList.set(1, null);
+
+		TestClass<String, ElementClass> randomized = classContext.randomizeInto(instance, generator);
+
+		assertSame(instance, randomized);
+		assertSame(theList, randomized.theList);
+		assertSame(theMap, randomized.theMap);
+		assertSame(array, randomized.theList.get(0));
+		// the final fields of ElementClass are not reassigned: its array is randomized in place, and its immutable values are left alone
+		assertSame(element, randomized.theList.get(0)[0]);
+		assertSame(doubleArray, element.doubleArray);
+		assertNotEquals(doubles[0], doubleArray[0]);
+		assertEquals(stringField, element.stringField);
+		assertEquals(3, randomized.theList.get(1).length);
+		assertEquals(3, randomized.theMap.size());
+	}
+
+	private static class ImmutableListClass {
+		List<String> strings;
+		Map<String, Integer> map;
+	}
+
+	@Test
+	public void mutateImmutableCollectionsTest() throws ReflectiveOperationException {
+		DefaultValueGenerator generator = new DefaultValueGenerator(new Random(0)) {
+			{
+				IMMUTABLE_COLLECTIONS = true;
+			}
+		};
+		ClassContext<ImmutableListClass> classContext = ClassUtil.analyze(ImmutableListClass.class);
+		ImmutableListClass instance = classContext.randomInstance(generator);
+		List<String> strings = List.copyOf(instance.strings);
+		Map<String, Integer> map = Map.copyOf(instance.map);
+		for (int round = 0; round < 20; round++) {
+			assertEquals(1, classContext.mutate(instance, generator, 1));
+		}
+		// the unmodifiable collections are only replaced as a whole
+		assertNotEquals(strings, instance.strings);
+		assertNotEquals(map, instance.map);
+		assertEquals(List.copyOf(instance.strings), instance.strings);
+		assertEquals(Map.copyOf(instance.map), instance.map);
+	}
+
+	private static final class FinalPoint {
+		private final int x;
+		private final String label;
+
+		FinalPoint(int x, String label) {
+			this.x = x;
+			this.label = label;
+		}
+	}
+
+	private static class FinalFieldClass {
+		final List<String> strings = new ArrayList<>();
+		String name;
+	}
+
+	private static class SharedPointClass {
+		FinalPoint point;
+		FinalFieldClass finalFieldClass;
+	}
+
+	@Test
+	public void randomizeIntoImmutableTest() throws ReflectiveOperationException {
+		DefaultValueGenerator generator = new DefaultValueGenerator(new Random(0));
+		ClassContext<SharedPointClass> classContext = ClassUtil.analyze(SharedPointClass.class);
+		SharedPointClass original = classContext.randomInstance(generator);
+		FinalPoint point = original.point;
+		int x = point.x;
+		String label = point.label;
+		// the deeply immutable point is shared by the clone
+		SharedPointClass clone = ClassUtil.deepClone(original);
+		assertSame(point, clone.point);
+		FinalFieldClass finalFieldClass = clone.finalFieldClass;
+		List<String> strings = finalFieldClass.strings;
+		List<String> stringsBefore = List.copyOf(strings);
+		String name = finalFieldClass.name;
+
+		SharedPointClass randomized = classContext.randomizeInto(clone, generator);
+		assertSame(clone, randomized);
+		assertNotSame(point, randomized.point);
+		assertEquals(x, point.x);
+		assertEquals(label, point.label);
+		// instances with final fields are reused, and their final collections refilled in place
+		assertSame(finalFieldClass, randomized.finalFieldClass);
+		assertSame(strings, finalFieldClass.strings);
+		assertNotEquals(stringsBefore, strings);
+		assertFalse(strings.isEmpty());
+		assertNotEquals(name, finalFieldClass.name);
+	}
+
+	private static class FinalLinkedListClass {
+		final LinkedList<String> linked = new LinkedList<>();
+		final List<String> fixedSize = Arrays.asList("a", "b");
+		final Map<String, Integer> map = new TreeMap<>();
+	}
+
+	@Test
+	public void randomizeIntoFinalContainersTest() throws ReflectiveOperationException {
+		DefaultValueGenerator generator = new DefaultValueGenerator(new Random(0));
+		ClassContext<FinalLinkedListClass> classContext = ClassUtil.analyze(FinalLinkedListClass.class);
+		FinalLinkedListClass instance = new FinalLinkedListClass();
+		instance.linked.add("x");
+		instance.map.put("x", 1);
+		LinkedList<String> linked = instance.linked;
+		Map<String, Integer> map = instance.map;
+
+		assertSame(instance, classContext.randomizeInto(instance, generator));
+		assertSame(linked, instance.linked);
+		assertSame(map, instance.map);
+		assertTrue(linked.size() >= 3 && !linked.contains("x"));
+		// the generated HashMap is refilled into the TreeMap
+		assertTrue(map.size() >= 3 && !map.containsKey("x"));
+		// a fixed-size list cannot be refilled, so it is left alone
+		assertEquals(List.of("a", "b"), instance.fixedSize);
+	}
+
+	private static class MutationClass {
+		int a;
+		int b;
+		Integer[] c;
+	}
+
+	@Test
+	public void mutateTest() throws ReflectiveOperationException {
+		DefaultValueGenerator generator = new DefaultValueGenerator(new Random(0));
+		ClassContext<MutationClass> classContext = ClassUtil.analyze(MutationClass.class);
+		for (int round = 0; round < 20; round++) {
+			MutationClass instance = classContext.randomInstance(generator);
+			int a = instance.a;
+			int b = instance.b;
+			Integer[] c = instance.c;
+			Integer[] cBefore = c.clone();
+
+			assertEquals(0, classContext.mutate(instance, generator, 0));
+			assertEquals(1, classContext.mutate(instance, generator, 1));
+
+			int changed = (a != instance.a ? 1 : 0) + (b != instance.b ? 1 : 0) + (c != instance.c ? 1 : 0);
+			for (int i = 0; i < c.length; i++) {
+				changed += cBefore[i].equals(c[i]) ? 0 : 1;
+			}
+			assertEquals(1, changed);
+		}
+
+		ClassContext<TestClass<String, ElementClass>> testClassContext = ClassUtil.analyze(new TypeReference<>() {});
+		TestClass<String, ElementClass> instance = testClassContext.randomInstance(generator);
+		for (int round = 0; round < 20; round++) {
+			int mutated = testClassContext.mutate(instance, generator, 3);
+			assertTrue(mutated >= 1 && mutated <= 3);
+		}
+	}
+
+	@Test
+	public void mutatorTest() throws ReflectiveOperationException {
+		DefaultValueGenerator generator = new DefaultValueGenerator(new Random(0));
+		ClassContext<FinalFieldClass> classContext = ClassUtil.analyze(FinalFieldClass.class);
+		FinalFieldClass instance = classContext.randomInstance(generator);
+		List<String> strings = instance.strings;
+		List<String> stringsBefore = List.copyOf(strings);
+		String name = instance.name;
+		// the items of the final list and the other fields are mutated, the list itself is kept
+		InstanceMutator<FinalFieldClass> mutator = classContext.mutator(instance, generator);
+		for (int round = 0; round < 50; round++) {
+			assertEquals(1, mutator.mutate(1));
+		}
+		assertSame(instance, mutator.getInstance());
+		assertSame(strings, instance.strings);
+		assertEquals(stringsBefore.size(), strings.size());
+		assertNotEquals(stringsBefore, strings);
+		assertNotEquals(name, instance.name);
+
+		// values replaced outside of the mutator are walked again
+		ClassContext<MutationClass> mutationContext = ClassUtil.analyze(MutationClass.class);
+		MutationClass mutation = mutationContext.randomInstance(generator);
+		InstanceMutator<MutationClass> mutationMutator = mutationContext.mutator(mutation, generator);
+		Integer[] c = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+		mutation.c = c;
+		for (int round = 0; round < 100; round++) {
+			assertEquals(1, mutationMutator.mutate(1));
+		}
+		assertTrue(mutation.c != c || !Arrays.equals(new Integer[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, c));
+	}
+
+	private static class NestedClass {
+		List<List<List<List<List<String>>>>> nested;
+	}
+
+	private static long countStrings(Object value) {
+		return value instanceof List<?> list ? list.stream().mapToLong(RandomInstanceTest::countStrings).sum() : value == null ? 0 : 1;
+	}
+
+	@Test
+	public void generationBudgetTest() throws ReflectiveOperationException {
+		ClassContext<NestedClass> classContext = ClassUtil.analyze(NestedClass.class);
+		assertTrue(countStrings(classContext.randomInstance(new DefaultValueGenerator(new Random(0))).nested) >= 243);
+
+		NestedClass instance = classContext.randomInstance(new DefaultValueGenerator(new Random(0)), GenerationBudget.ofNodes(200));
+		long strings = countStrings(instance.nested);
+		assertTrue(strings > 0 && strings <= 200);
+
+		NestedClass bytesLimited = classContext.randomInstance(new DefaultValueGenerator(new Random(0)), GenerationBudget.ofBytes(2000));
+		assertTrue(countStrings(bytesLimited.nested) < 100);
+
+		NestedClass shallow = classContext.randomInstance(new DefaultValueGenerator(new Random(0)), GenerationBudget.ofDepth(2));
+		assertTrue(shallow.nested.size() > 0);
+		for (List<List<List<List<String>>>> item : shallow.nested) {
+			assertEquals(0, item.size());
+		}
+	}
+
+	@Test
+	public void costModelTest() {
+		ValueGenerator generator = new DefaultValueGenerator(new Random(0)) {
+			{
+				MIN_COLLECTION_SIZE = 3;
+				MAX_COLLECTION_SIZE = 3;
+			}
+		};
+		CostModel model = CostModel.estimate(ClassUtil.analyze(NestedClass.class), generator);
+
+		// the root, 1 + 3 + 9 + 27 + 81 lists and 243 strings
+		assertEquals(365, model.getExpectedNodes(), 1e-9);
+		CostModel.PathCost hottest = model.getHottestPaths(1).get(0);
+		assertEquals("nested[*][*][*][*]", hottest.getPath());
+		assertEquals(ArrayList.class, hottest.getType().getActualClass());
+		assertEquals(81, hottest.getExpectedCount(), 1e-9);
+		CostModel.PathCost root = model.getPathCosts().stream().filter(pathCost -> pathCost.getPath().isEmpty()).findFirst().get();
+		assertEquals(model.getExpectedBytes(), root.getExpectedSubtreeBytes(), 1e-9);
+
+		CostModel recursive = CostModel.estimate(ClassUtil.analyze(Chicken.class), generator);
+		// the chicken, its name, its egg, the name of the egg and the cut off chicken of the egg
+		assertEquals(5, recursive.getExpectedNodes(), 1e-9);
+	}
+
+	private static class CostRow {
+		int id;
+		double[] amounts;
+		Map<String, Integer> counts;
+		ElementClass.MyEnum kind;
+		Chicken chicken;
+		NestedClass nested;
+	}
+
+	@Test
+	public void costModelAccountingTest() throws ReflectiveOperationException {
+		ValueGenerator generator = new DefaultValueGenerator(new Random(0)) {
+			{
+				MIN_COLLECTION_SIZE = 2;
+				MAX_COLLECTION_SIZE = 2;
+			}
+		};
+		// with fixed collection sizes, the estimate is the same as what GenerationBudget counts
+		for (Class<?> clazz : List.of(CostRow.class, NestedClass.class, Chicken.class)) {
+			ClassContext<?> classContext = (ClassContext<?>) ClassUtil.analyze(clazz);
+			CostModel model = CostModel.estimate(classContext, generator);
+			RandomInstanceState state = new RandomInstanceState();
+			classContext.randomInstance(generator, state);
+			assertEquals(classContext.toString(), state.getNodeCount(), model.getExpectedNodes(), 1e-9);
+			assertEquals(classContext.toString(), state.getAllocatedBytes(), model.getExpectedBytes(), 1e-9);
+		}
+
+		// sampling does not draw from the Random of the generator
+		ValueGenerator estimated = new DefaultValueGenerator(new Random(42));
+		CostModel.estimate(ClassUtil.analyze(CostRow.class), estimated);
+		CostRow expected = ClassUtil.<CostRow, ClassContext<CostRow>>analyze(CostRow.class).randomInstance(new DefaultValueGenerator(new Random(42)));
+		CostRow actual = ClassUtil.<CostRow, ClassContext<CostRow>>analyze(CostRow.class).randomInstance(estimated);
+		assertEquals(expected.id, actual.id);
+		assertEquals(expected.counts, actual.counts);
+
+		// the mean collection size is used as is, also through a wrapping generator, while a generator overriding getCollectionSize is sampled
+		DefaultValueGenerator ranged = new DefaultValueGenerator(new Random(0)) {
+			{
+				MIN_COLLECTION_SIZE = 2;
+				MAX_COLLECTION_SIZE = 5;
+			}
+		};
+		ContextualType<?> listType = ClassUtil.analyze(new TypeReference<List<String>>() {});
+		assertEquals(3.5, new InterningValueGenerator(ranged, 4).getExpectedCollectionSize(listType, "", 16), 0);
+		ValueGenerator overriding = new DefaultValueGenerator(new Random(0)) {
+			@Override
+			public int getCollectionSize(ContextualType<?> type, String path) {
+				return 7;
+			}
+		};
+		assertEquals(7, overriding.getExpectedCollectionSize(listType, "", 16), 0);
+	}
+
+	@Test
+	public void recursionTrackingTest() {
+		RandomInstanceState state = new RandomInstanceState();
+		ContextualType<?> chicken = ClassUtil.analyze(new TypeReference<List<Chicken>>() {});
+		ContextualType<?> sameChicken = ClassUtil.analyze(new TypeReference<List<Chicken>>() {});
+		ContextualType<?> egg = ClassUtil.analyze(new TypeReference<List<Egg>>() {});
+		assertTrue(chicken != sameChicken);
+
+		state.pushInstance(chicken, "chicken1");
+		state.pushInstance(egg, "egg");
+		state.pushInstance(sameChicken, "chicken2");
+		assertEquals(List.of("chicken1", "chicken2"), state.getInstances(chicken));
+		assertEquals(List.of("egg"), state.getInstances(egg));
+		assertEquals(List.of("chicken1", "chicken2"), state.getInstances(ClassUtil.analyze(new TypeReference<List<Chicken>>() {}).intern()));
+		// types sharing a bucket of hash codes are told apart
+		for (int i = 1; i <= 128; i++) {
+			assertTrue(state.getInstances(ClassUtil.analyze(Array.newInstance(Chicken.class, new int[i]).getClass())).isEmpty());
+		}
+
+		state.popInstance(sameChicken);
+		state.popInstance(egg);
+		assertEquals(List.of("chicken1"), state.getInstances(sameChicken));
+		assertTrue(state.getInstances(egg).isEmpty());
+	}
+
+	private static class FlatRow {
+		static int ignored;
+		int id;
+		long timestamp;
+		double amount;
+		String category;
+		ElementClass.MyEnum kind;
+	}
+
+	@Test
+	public void randomColumnsTest() throws ReflectiveOperationException {
+		ValueGenerator generator = new DefaultValueGenerator(new Random(0)) {
+			@Override
+			public Object generate(ContextualType<?> type, String path, CurrentInstanceContext currentInstanceContext) throws ReflectiveOperationException {
+				// each row is generated at the path of its field followed by the row index
+				if (path.startsWith("category[")) return List.of("a", "b", "c").get(random.nextInt(3));
+				return super.generate(type, path, currentInstanceContext);
+			}
+		};
+		ClassContext<FlatRow> classContext = ClassUtil.analyze(FlatRow.class);
+		ColumnBatch batch = classContext.randomColumns(generator, 1000);
+
+		assertEquals(1000, batch.getSize());
+		assertEquals(List.of("id", "timestamp", "amount", "category", "kind"), batch.getColumns().stream().map(ColumnBatch.Column::getName).toList());
+		assertEquals(1000, batch.getColumn("id").getInts().length);
+		assertEquals(1000, batch.getColumn("timestamp").getLongs().length);
+		double[] amounts = batch.getColumn("amount").getDoubles();
+		assertTrue(batch.getColumn("category").isDictionaryEncoded());
+		assertEquals(Set.of("a", "b", "c"), Set.copyOf(batch.getColumn("category").getDictionary()));
+		assertEquals(ElementClass.MyEnum.class, batch.getColumn("kind").get(0).getClass());
+		assertNull(batch.getColumn("ignored"));
+
+		assertEquals(List.of(), batch.getColumn("id").getDictionary());
+
+		double amount = amounts[0];
+		classContext.randomColumns(generator, batch);
+		assertSame(amounts, batch.getColumn("amount").getDoubles());
+		assertNotEquals(amount, amounts[0], 0);
+
+		// primitive columns are filled in bulk when the generator supports it
+		List<String> bulkPaths = new ArrayList<>();
+		ValueGenerator bulkGenerator = new DefaultValueGenerator(new Random(1)) {
+			@Override
+			public boolean generateItems(ContextualType<?> itemType, String path, Object items) {
+				bulkPaths.add(path);
+				return super.generateItems(itemType, path, items);
+			}
+		};
+		amount = amounts[0];
+		classContext.randomColumns(bulkGenerator, batch);
+		assertEquals(List.of("id", "timestamp", "amount"), bulkPaths);
+		assertNotEquals(amount, amounts[0], 0);
+		assertSame(amounts, batch.getColumn("amount").getDoubles());
+		assertEquals(1000, Arrays.stream(batch.getColumn("id").getInts()).distinct().count(), 10);
+
+		// the rows of a seekable generator differ, and are the same for the same seed and index
+		ColumnBatch seekableBatch = classContext.randomColumns(new SeekableValueGenerator(7, 0), 100);
+		assertEquals(100, Arrays.stream(seekableBatch.getColumn("amount").getDoubles()).distinct().count(), 5);
+		assertTrue(seekableBatch.getColumn("category").getDictionary().size() > 50);
+		ColumnBatch sameBatch = classContext.randomColumns(new SeekableValueGenerator(7, 0), 100);
+		assertArrayEquals(seekableBatch.getColumn("id").getInts(), sameBatch.getColumn("id").getInts());
+		assertEquals(seekableBatch.getColumn("category").getDictionary(), sameBatch.getColumn("category").getDictionary());
+	}
+
+	@Test
+	public void pathIndependentGeneratorTest() throws ReflectiveOperationException {
+		assertTrue(new DefaultValueGenerator().isPathIndependent());
+		assertTrue(new DefaultValueGenerator() {
+			@Override
+			public int getCollectionSize(ContextualType<?> type, String path) {
+				return 1;
+			}
+		}.isPathIndependent());
+
+		List<String> ignoredFieldPaths = new ArrayList<>();
+		DefaultValueGenerator pathDependent = new DefaultValueGenerator() {
+			@Override
+			public boolean isIgnoredField(ContextualType<?> declaringType, String path, Field field) {
+				ignoredFieldPaths.add(path);
+				return super.isIgnoredField(declaringType, path, field);
+			}
+		};
+		assertTrue(!pathDependent.isPathIndependent());
+		ClassUtil.analyze(NestedClass.class).randomInstance(pathDependent);
+		int pathDependentCalls = ignoredFieldPaths.size();
+		assertTrue(ignoredFieldPaths.stream().anyMatch(path -> !path.isEmpty()));
+
+		ignoredFieldPaths.clear();
+		DefaultValueGenerator pathIndependent = new DefaultValueGenerator() {
+			@Override
+			public boolean isIgnoredField(ContextualType<?> declaringType, String path, Field field) {
+				ignoredFieldPaths.add(path);
+				return super.isIgnoredField(declaringType, path, field);
+			}
+			@Override
+			public boolean isPathIndependent() {
+				return true;
+			}
+		};
+		NestedClass first = ClassUtil.analyze(NestedClass.class).randomInstance(pathIndependent);
+		NestedClass second = ClassUtil.analyze(NestedClass.class).randomInstance(pathIndependent);
+		assertNotNull(first);
+		assertNotNull(second);
+		assertTrue(ignoredFieldPaths.stream().allMatch(String::isEmpty));
+		assertTrue(ignoredFieldPaths.size() < pathDependentCalls);
+
+		// the decisions are shared by the generators of the same class, and recomputed when PRIMITIVE_COLLECTIONS changes
+		assertSame(new DefaultValueGenerator().getDecisionKey(), new DefaultValueGenerator(new Random(1)).getDecisionKey());
+		assertSame(pathIndependent, pathIndependent.getDecisionKey());
+		var toggled = new DefaultValueGenerator() {
+			void setPrimitiveCollections(boolean primitiveCollections) {
+				PRIMITIVE_COLLECTIONS = primitiveCollections;
+			}
+		};
+		ClassContext<InterningRow> rowContext = ClassUtil.analyze(InterningRow.class);
+		assertEquals(ArrayList.class, rowContext.randomInstance(toggled).counts.getClass());
+		toggled.setPrimitiveCollections(true);
+		assertEquals(IntArrayList.class, rowContext.randomInstance(toggled).counts.getClass());
+		toggled.setPrimitiveCollections(false);
+		assertEquals(ArrayList.class, rowContext.randomInstance(toggled).counts.getClass());
+
+		// the paths are only built for generators using them
+		assertFalse(new DefaultValueGenerator().isPathUsed());
+		assertFalse(new InterningValueGenerator(new DefaultValueGenerator(), 4).isPathUsed());
+		assertTrue(pathDependent.isPathUsed());
+		assertTrue(new SeekableValueGenerator(0, 0).isPathUsed());
+	}
+
+	private static class InterningRow {
+		String name;
+		Integer count;
+		Instant createdAt;
+		Date updatedAt;
+		List<String> tags;
+		List<Integer> counts;
+	}
+
+	@Test
+	public void interningValueGeneratorTest() throws ReflectiveOperationException {
+		ValueGenerator generator = new InterningValueGenerator(new DefaultValueGenerator(new Random(0)), 4);
+		ClassContext<InterningRow> classContext = ClassUtil.analyze(InterningRow.class);
+		Set<Object> names = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Object> createdAts = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Object> strings = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Object> tagLists = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Object> updatedAts = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (int i = 0; i < 200; i++) {
+			InterningRow row = classContext.randomInstance(generator);
+			names.add(row.name);
+			createdAts.add(row.createdAt);
+			strings.add(row.name);
+			strings.addAll(row.tags);
+			tagLists.add(row.tags);
+			updatedAts.add(row.updatedAt);
+		}
+		// String values are pooled per type, not per field
+		assertEquals(4, strings.size());
+		assertTrue(names.size() <= 4);
+		assertEquals(4, createdAts.size());
+		assertEquals(200, tagLists.size());
+		// Dates are mutable, so they are never pooled
+		assertEquals(200, updatedAts.size());
+
+		// the bulk generation of primitive-backed collections is forwarded to the wrapped generator
+		int[] bulkCalls = new int[1];
+		ValueGenerator primitiveGenerator = new DefaultValueGenerator() {
+			{
+				PRIMITIVE_COLLECTIONS = true;
+			}
+
+			@Override
+			public boolean generateItems(ContextualType<?> itemType, String path, Object items) {
+				bulkCalls[0]++;
+				return super.generateItems(itemType, path, items);
+			}
+		};
+		InterningRow row = classContext.randomInstance(new InterningValueGenerator(primitiveGenerator, 4));
+		assertEquals(IntArrayList.class, row.counts.getClass());
+		assertEquals(1, bulkCalls[0]);
+	}
+
+	@Test
+	public void presizedContainerTest() throws ReflectiveOperationException {
+		ClassContext<ArrayList<String>> listContext = ClassUtil.analyze(new TypeReference<ArrayList<String>>() {});
+		ClassContext<LinkedHashMap<String, String>> mapContext = ClassUtil.analyze(new TypeReference<LinkedHashMap<String, String>>() {});
+		assertEquals(ArrayList.class, listContext.newContainerInstance(100).getClass());
+		assertEquals(100, listContext.initialCapacity(100));
+		assertEquals(134, mapContext.initialCapacity(100));
+		assertNull(ClassUtil.<NestedClass, ClassContext<NestedClass>>analyze(NestedClass.class).newContainerInstance(100));
+
+		ValueGenerator generator = new DefaultValueGenerator() {
+			@Override
+			public int getCollectionSize(ContextualType<?> type, String path) {
+				return 1000;
+			}
+		};
+		assertEquals(1000, listContext.randomInstance(generator).size());
+		assertEquals(1000, mapContext.randomInstance(generator).size());
+
+		// PriorityQueue rejects a capacity of 0, which an empty collection would ask for
+		ClassContext<PriorityQueue<Integer>> queueContext = ClassUtil.analyze(new TypeReference<PriorityQueue<Integer>>() {});
+		assertEquals(1, queueContext.initialCapacity(0));
+		assertEquals(1, mapContext.initialCapacity(0));
+		assertEquals(1000, queueContext.randomInstance(generator).size());
+		ValueGenerator emptyGenerator = new DefaultValueGenerator() {
+			@Override
+			public int getCollectionSize(ContextualType<?> type, String path) {
+				return 0;
+			}
+		};
+		ClassContext<ArrayDeque<String>> dequeContext = ClassUtil.analyze(new TypeReference<ArrayDeque<String>>() {});
+		ClassContext<HashSet<String>> setContext = ClassUtil.analyze(new TypeReference<HashSet<String>>() {});
+		assertTrue(queueContext.randomInstance(emptyGenerator).isEmpty());
+		assertTrue(listContext.randomInstance(emptyGenerator).isEmpty());
+		assertTrue(dequeContext.randomInstance(emptyGenerator).isEmpty());
+		assertTrue(setContext.randomInstance(emptyGenerator).isEmpty());
+		assertTrue(mapContext.randomInstance(emptyGenerator).isEmpty());
+	}
+
+	private static class EnumKeyedClass {
+		Set<ElementClass.MyEnum> enumSet;
+		Map<ElementClass.MyEnum, List<String>> enumMap;
+		Set<String> stringSet;
+	}
+
+	@Test
+	public void enumKeyedCollectionsTest() throws ReflectiveOperationException {
+		EnumKeyedClass instance = ClassUtil.analyze(EnumKeyedClass.class).randomInstance();
+		assertTrue(instance.enumSet instanceof EnumSet);
+		assertTrue(!instance.enumSet.isEmpty());
+		assertEquals(EnumMap.class, instance.enumMap.getClass());
+		assertTrue(!instance.enumMap.isEmpty());
+		assertEquals(LinkedHashSet.class, instance.stringSet.getClass());
+
+		EnumKeyedClass clone = ClassUtil.deepClone(instance);
+		assertTrue(clone.enumSet != instance.enumSet);
+		assertTrue(clone.enumMap != instance.enumMap);
+		assertEquals(instance.enumSet, clone.enumSet);
+		assertEquals(instance.enumMap, clone.enumMap);
+		ElementClass.MyEnum key = instance.enumMap.keySet().iterator().next();
+		assertTrue(clone.enumMap.get(key) != instance.enumMap.get(key));
+		assertEquals(instance.enumSet, ClassUtil.shallowClone(instance.enumSet));
+	}
+
+	private static class CollectionsClass {
+		List<String> list;
+		Set<Integer> set;
+		Map<String, List<String>> map;
+		Collection<String> collection;
+		ArrayList<String> arrayList;
+	}
+
+	@Test
+	public void immutableCollectionsTest() throws ReflectiveOperationException {
+		ValueGenerator generator = new DefaultValueGenerator() {
+			{
+				IMMUTABLE_COLLECTIONS = true;
+			}
+		};
+		CollectionsClass instance = ClassUtil.analyze(CollectionsClass.class).randomInstance(generator);
+		assertEquals(List.copyOf(instance.list), instance.list);
+		assertTrue(!instance.set.isEmpty());
+		assertTrue(!instance.collection.isEmpty());
+		assertEquals(ArrayList.class, instance.arrayList.getClass());
+		for (Runnable modification : List.<Runnable>of(() -> instance.list.add("a"), () -> instance.set.add(1), () -> instance.map.clear(),
+				() -> instance.map.values().iterator().next().add("a"), () -> instance.collection.add("a"))) {
+			try {
+				modification.run();
+				assertTrue(false);
+			} catch (UnsupportedOperationException e) {
+			}
+		}
+
+		CollectionsClass clone = ClassUtil.deepClone(instance);
+		assertTrue(clone.map != instance.map);
+		assertTrue(ClassUtil.deepEquals(instance, clone));
+		assertSame(instance.list, ClassUtil.shallowClone(instance.list));
+	}
+
+	private static class PrimitiveCollectionsClass {
+		List<Integer> ints;
+		List<Long> longs;
+		List<Double> doubles;
+		Set<Integer> intSet;
+		Set<Long> longSet;
+		List<String> strings;
+	}
+
+	@Test
+	public void primitiveCollectionsTest() throws ReflectiveOperationException {
+		ValueGenerator generator = new DefaultValueGenerator() {
+			{
+				PRIMITIVE_COLLECTIONS = true;
+			}
+		};
+		PrimitiveCollectionsClass instance = ClassUtil.analyze(PrimitiveCollectionsClass.class).randomInstance(generator);
+		assertEquals(IntArrayList.class, instance.ints.getClass());
+		assertEquals(LongArrayList.class, instance.longs.getClass());
+		assertEquals(DoubleArrayList.class, instance.doubles.getClass());
+		assertEquals(IntHashSet.class, instance.intSet.getClass());
+		assertEquals(LongHashSet.class, instance.longSet.getClass());
+		assertEquals(ArrayList.class, instance.strings.getClass());
+		assertTrue(instance.ints.size() >= 3 && instance.ints.size() <= 5);
+		assertTrue(instance.intSet.size() >= 3 && instance.intSet.size() <= 5);
+
+		PrimitiveCollectionsClass clone = ClassUtil.deepClone(instance);
+		assertTrue(ClassUtil.deepEquals(instance, clone));
+		assertEquals(instance.ints, clone.ints);
+		assertEquals(instance.longSet, clone.longSet);
+	}
 }
@@ -0,0 +1,84 @@
+package util.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import util.reflect.ClassUtil.TypeReference;
+import util.reflect.RecordWriter.Format;
+import util.reflect.ValueGenerator.DefaultValueGenerator;
+
+public class RecordWriterTest {
+
+	private static class Item {
+		enum Kind { A, B }
+
+		String name;
+		Kind kind;
+	}
+
+	private static class Record {
+		int id;
+		boolean active;
+		String label;
+		Item item;
+		int[] scores;
+		List<Item> items;
+		Map<String, Integer> counts;
+		Record self;
+	}
+
+	private String write(ContextualType<?> type, Format format, long count) throws ReflectiveOperationException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (RecordWriter writer = new RecordWriter(out, format)) {
+			writer.write(type, new DefaultValueGenerator(new Random(0)) {
+				@Override
+				public int getCollectionSize(ContextualType<?> type, String path) {
+					return 2;
+				}
+			}, count);
+		}
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void ndjsonTest() throws ReflectiveOperationException, IOException {
+		String[] lines = write(ClassUtil.analyze(Record.class), Format.NDJSON, 3).split("\n");
+
+		assertEquals(3, lines.length);
+		for (String line : lines) {
+			assertTrue(line, line.matches("\\{\"id\":-?\\d+,\"active\":(true|false),\"label\":\"[0-9a-f-]+\","
+					+ "\"item\":\\{\"name\":\"[0-9a-f-]+\",\"kind\":\"[AB]\"\\},"
+					+ "\"scores\":\\[-?\\d+,-?\\d+\\],"
+					+ "\"items\":\\[\\{[^{}]*\\},\\{[^{}]*\\}\\],"
+					+ "\"counts\":\\{\"[0-9a-f-]+\":-?\\d+,\"[0-9a-f-]+\":-?\\d+\\},"
+					+ "\"self\":null\\}"));
+		}
+	}
+
+	@Test
+	public void csvTest() throws ReflectiveOperationException, IOException {
+		String[] lines = write(ClassUtil.analyze(Record.class), Format.CSV, 2).split("\n");
+
+		assertEquals(3, lines.length);
+		assertEquals("id,active,label,item,scores,items,counts,self", lines[0]);
+		assertTrue(lines[1], lines[1].matches("-?\\d+,(true|false),[0-9a-f-]+,\"\\{\"\"name\"\":\"\"[0-9a-f-]+\"\",\"\"kind\"\":\"\"[AB]\"\"\\}\",\"\\[-?\\d+,-?\\d+\\]\",.*,"));
+	}
+
+	@Test
+	public void csvNonObjectRootTest() throws ReflectiveOperationException, IOException {
+		String[] lines = write(ClassUtil.analyze(new TypeReference<List<Integer>>() {}), Format.CSV, 1).split("\n");
+
+		assertEquals(2, lines.length);
+		assertEquals("value", lines[0]);
+		assertTrue(lines[1], lines[1].matches("\"\\[-?\\d+,-?\\d+\\]\""));
+	}
+}